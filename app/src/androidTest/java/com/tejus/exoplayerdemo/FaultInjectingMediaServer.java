@@ -0,0 +1,216 @@
+package com.tejus.exoplayerdemo;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link LocalMediaServer} with scriptable network faults: a throughput cap shared by all
+ * open responses, like one constrained link, latency before every response, a one-off stall
+ * and a dropped connection at given file offsets, and error responses for the next few
+ * requests. Faults can be changed while a player is loading and apply from the next write on.
+ */
+public class FaultInjectingMediaServer extends LocalMediaServer {
+
+    private static final int MAX_WRITE = 4 * 1024;
+    // Burst a response may send ahead of the cap, e.g. after the link was idle.
+    private static final long MAX_BURST_MS = 100;
+
+    private volatile long mBytesPerSecond;
+    private volatile long mLatencyMs;
+    private volatile long mStallOffset = -1;
+    private volatile long mStallMs;
+    private volatile long mDropOffset = -1;
+    private int mErrorCode;
+    private int mErrorsLeft;
+    private final AtomicInteger mFaultCount = new AtomicInteger();
+    // Token bucket of the link, in bytes, guarded by mBucketLock.
+    private final Object mBucketLock = new Object();
+    private double mTokens;
+    private long mRefilledAtMs = SystemClock.elapsedRealtime();
+
+    public FaultInjectingMediaServer(File file) throws IOException {
+        super(file);
+    }
+
+    /**
+     * Caps the combined throughput of all responses, or lifts the cap with 0.
+     */
+    public FaultInjectingMediaServer setThroughput(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Delays the headers of every response, like a round trip to a distant server.
+     */
+    public FaultInjectingMediaServer setLatency(long latencyMs) {
+        mLatencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * Stops sending for stallMs once the response that covers fileOffset gets there. Fires
+     * once; call again to arm another stall.
+     */
+    public FaultInjectingMediaServer stallAt(long fileOffset, long stallMs) {
+        mStallMs = stallMs;
+        mStallOffset = fileOffset;
+        return this;
+    }
+
+    /**
+     * Closes the connection once the response that covers fileOffset gets there. Fires once.
+     */
+    public FaultInjectingMediaServer dropAt(long fileOffset) {
+        mDropOffset = fileOffset;
+        return this;
+    }
+
+    /**
+     * Answers the next count requests with the given status code and no body.
+     */
+    public synchronized FaultInjectingMediaServer failNext(int count, int statusCode) {
+        mErrorCode = statusCode;
+        mErrorsLeft = count;
+        return this;
+    }
+
+    public synchronized FaultInjectingMediaServer clearFaults() {
+        mBytesPerSecond = 0;
+        mLatencyMs = 0;
+        mStallOffset = -1;
+        mDropOffset = -1;
+        mErrorsLeft = 0;
+        return this;
+    }
+
+    /**
+     * Returns how many stalls, drops and error responses were injected so far.
+     */
+    public int getFaultCount() {
+        return mFaultCount.get();
+    }
+
+    @Override
+    protected void respond(OutputStream output, boolean headOnly, String rangeHeader)
+            throws IOException {
+        sleep(mLatencyMs);
+        int errorCode = takeErrorCode();
+        if (errorCode != 0) {
+            mFaultCount.incrementAndGet();
+            writeHeaders(output, errorCode + " Injected", 0, "");
+            output.flush();
+            return;
+        }
+        super.respond(output, headOnly, rangeHeader);
+    }
+
+    @Override
+    protected void writeBody(OutputStream output, long start, long count) throws IOException {
+        super.writeBody(new FaultyOutputStream(output, start), start, count);
+    }
+
+    /**
+     * Returns the status code to fail the current request with, or 0 to serve it.
+     */
+    private synchronized int takeErrorCode() {
+        if (mErrorsLeft <= 0) {
+            return 0;
+        }
+        mErrorsLeft--;
+        return mErrorCode;
+    }
+
+    /**
+     * Takes bytes from the shared bucket, sleeping until enough were refilled at the cap.
+     * Responses running in parallel take turns, so together they get the capped rate.
+     */
+    private void throttle(int bytes) throws IOException {
+        while (true) {
+            long waitMs;
+            synchronized (mBucketLock) {
+                long bytesPerSecond = mBytesPerSecond;
+                long nowMs = SystemClock.elapsedRealtime();
+                if (bytesPerSecond <= 0) {
+                    mTokens = 0;
+                    mRefilledAtMs = nowMs;
+                    return;
+                }
+                mTokens = Math.min(mTokens + (nowMs - mRefilledAtMs) * bytesPerSecond / 1000.0,
+                        Math.max(bytes, bytesPerSecond * MAX_BURST_MS / 1000.0));
+                mRefilledAtMs = nowMs;
+                if (mTokens >= bytes) {
+                    mTokens -= bytes;
+                    return;
+                }
+                waitMs = (long) Math.ceil((bytes - mTokens) * 1000 / bytesPerSecond);
+            }
+            sleep(Math.max(1, waitMs));
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            // The server is closing.
+            Thread.currentThread().interrupt();
+            throw new SocketException("Interrupted");
+        }
+    }
+
+    /**
+     * Applies the faults to the body of one response, which starts at fileOffset.
+     */
+    private class FaultyOutputStream extends FilterOutputStream {
+
+        private long mFileOffset;
+
+        FaultyOutputStream(OutputStream output, long fileOffset) {
+            super(output);
+            mFileOffset = fileOffset;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int chunk = Math.min(length, MAX_WRITE);
+                long end = mFileOffset + chunk;
+                long dropOffset = mDropOffset;
+                if (dropOffset >= mFileOffset && dropOffset < end) {
+                    mDropOffset = -1;
+                    mFaultCount.incrementAndGet();
+                    // Thrown as a SocketException so the server closes quietly, as on a reset.
+                    throw new SocketException("Injected connection drop at " + dropOffset);
+                }
+                long stallOffset = mStallOffset;
+                if (stallOffset >= mFileOffset && stallOffset < end) {
+                    mStallOffset = -1;
+                    mFaultCount.incrementAndGet();
+                    out.flush();
+                    sleep(mStallMs);
+                }
+                throttle(chunk);
+                out.write(buffer, offset, chunk);
+                out.flush();
+                offset += chunk;
+                length -= chunk;
+                mFileOffset = end;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.tejus.exoplayerdemo;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a short H.264 MP4 on the device, so the benchmarks don't need a binary fixture in
+ * the repository. The result is kept and reused by later runs.
+ */
+public class FixtureMedia {
+
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAME_RATE = 30;
+    private static final int BIT_RATE = 800_000;
+    static final int DURATION_MS = 10000;
+    private static final int FRAME_COUNT = DURATION_MS * FRAME_RATE / 1000;
+    private static final long TIMEOUT_US = 10000;
+
+    private FixtureMedia() {
+    }
+
+    /**
+     * Returns file, encoding it first if it doesn't exist yet. Has a key frame every second.
+     */
+    public static synchronized File create(File file) throws IOException {
+        if (file.exists() && file.length() > 0) {
+            return file;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, WIDTH, HEIGHT);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1);
+
+        MediaCodec encoder = MediaCodec.createEncoderByType(MIME_TYPE);
+        MediaMuxer muxer = new MediaMuxer(tempFile.getPath(),
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        boolean muxerStarted = false;
+        try {
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            encoder.start();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            int track = -1;
+            int frame = 0;
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int inputIndex = encoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        long presentationTimeUs = frame * 1000000L / FRAME_RATE;
+                        if (frame == FRAME_COUNT) {
+                            encoder.queueInputBuffer(inputIndex, 0, 0, presentationTimeUs,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            Image image = encoder.getInputImage(inputIndex);
+                            fillFrame(image, frame);
+                            encoder.queueInputBuffer(inputIndex, 0, WIDTH * HEIGHT * 3 / 2,
+                                    presentationTimeUs, 0);
+                            frame++;
+                        }
+                    }
+                }
+                int outputIndex = encoder.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    track = muxer.addTrack(encoder.getOutputFormat());
+                    muxer.start();
+                    muxerStarted = true;
+                } else if (outputIndex >= 0) {
+                    ByteBuffer data = encoder.getOutputBuffer(outputIndex);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                        // Already part of the output format.
+                        info.size = 0;
+                    }
+                    if (info.size > 0 && muxerStarted && data != null) {
+                        data.position(info.offset);
+                        data.limit(info.offset + info.size);
+                        muxer.writeSampleData(track, data, info);
+                    }
+                    encoder.releaseOutputBuffer(outputIndex, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+        } finally {
+            encoder.release();
+            if (muxerStarted) {
+                muxer.stop();
+            }
+            muxer.release();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Unable to move fixture to " + file);
+        }
+        return file;
+    }
+
+    /**
+     * A gradient scrolling sideways, so consecutive frames differ and the encoder produces
+     * realistic P frames.
+     */
+    private static void fillFrame(Image image, int frame) {
+        Image.Plane[] planes = image.getPlanes();
+        for (int i = 0; i < planes.length; i++) {
+            ByteBuffer buffer = planes[i].getBuffer();
+            int rowStride = planes[i].getRowStride();
+            int pixelStride = planes[i].getPixelStride();
+            int width = i == 0 ? WIDTH : WIDTH / 2;
+            int height = i == 0 ? HEIGHT : HEIGHT / 2;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    byte value = i == 0 ? (byte) (x + y + frame * 4) : (byte) 128;
+                    buffer.put(y * rowStride + x * pixelStride, value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.tejus.exoplayerdemo;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server on the loopback interface that serves one file for every path, with
+ * keep-alive and byte range support. Stands in for the CDN so player benchmarks don't depend
+ * on the network.
+ */
+public class LocalMediaServer implements Closeable {
+
+    private static final String LOG_TAG = LocalMediaServer.class.getSimpleName();
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File mFile;
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private volatile boolean mClosed;
+
+    public LocalMediaServer(File file) throws IOException {
+        mFile = file;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(this::acceptLoop);
+    }
+
+    /**
+     * Returns a url for the served file. Different names give different cache keys.
+     */
+    public String getUrl(String name) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + name;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    private void acceptLoop() {
+        while (!mClosed) {
+            try {
+                Socket socket = mServerSocket.accept();
+                mExecutor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!mClosed) {
+                    Log.e(LOG_TAG, "Exception caught in accept: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream output = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null && !requestLine.isEmpty()) {
+                String rangeHeader = null;
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    if (line.toLowerCase(Locale.US).startsWith("range:")) {
+                        rangeHeader = line.substring("range:".length()).trim();
+                    }
+                }
+                mRequestCount.incrementAndGet();
+                respond(output, requestLine.startsWith("HEAD "), rangeHeader);
+            }
+        } catch (SocketException e) {
+            // The client closed the connection, e.g. after a seek.
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Exception caught in serve: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Writes the response for one request. Subclasses can override this to misbehave.
+     */
+    protected void respond(OutputStream output, boolean headOnly, String rangeHeader)
+            throws IOException {
+        long length = mFile.length();
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
+            String[] range = rangeHeader.substring("bytes=".length()).split("-", 2);
+            if (!range[0].isEmpty()) {
+                start = Long.parseLong(range[0]);
+            }
+            if (range.length > 1 && !range[1].isEmpty()) {
+                end = Math.min(Long.parseLong(range[1]), length - 1);
+            }
+            partial = true;
+        }
+        if (start >= length) {
+            writeHeaders(output, "416 Range Not Satisfiable", 0,
+                    "Content-Range: bytes */" + length + "\r\n");
+            return;
+        }
+        long count = end - start + 1;
+        writeHeaders(output, partial ? "206 Partial Content" : "200 OK", count,
+                partial ? "Content-Range: bytes " + start + "-" + end + "/" + length + "\r\n" : "");
+        if (!headOnly) {
+            writeBody(output, start, count);
+        }
+        output.flush();
+    }
+
+    protected void writeHeaders(OutputStream output, String status, long contentLength,
+                                String extraHeaders) throws IOException {
+        String headers = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: video/mp4\r\n"
+                + "Accept-Ranges: bytes\r\n"
+                + "Content-Length: " + contentLength + "\r\n"
+                + extraHeaders
+                + "Connection: keep-alive\r\n"
+                + "\r\n";
+        output.write(headers.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    protected void writeBody(OutputStream output, long start, long count) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.seek(start);
+            long remaining = count;
+            while (remaining > 0) {
+                int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+}
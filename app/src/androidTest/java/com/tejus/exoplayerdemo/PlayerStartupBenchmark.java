@@ -0,0 +1,223 @@
+package com.tejus.exoplayerdemo;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.ui.PlayerView;
+import com.tejus.exoplayerdemo.videoplayer.PlayerInstance;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long {@link PlayerInstance} takes from play() to ready, cold and from the
+ * media cache, and from seek() to ready, against {@link LocalMediaServer}. Results are written
+ * as JSON to the app's external files dir under benchmark/ and reported as instrumentation
+ * status, so runs on different commits can be compared.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlayerStartupBenchmark {
+
+    private static final String LOG_TAG = PlayerStartupBenchmark.class.getSimpleName();
+    private static final int ITERATIONS = 10;
+    private static final long TIMEOUT_MS = 15000;
+    private static final long SEEK_POSITION_MS = FixtureMedia.DURATION_MS / 2;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private Context mContext;
+    private LocalMediaServer mServer;
+    private PlayerView mPlayerView;
+    private PlayerInstance mPlayerInstance;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        File fixture = FixtureMedia.create(new File(mContext.getCacheDir(), "fixture.mp4"));
+        mServer = new LocalMediaServer(fixture);
+        mInstrumentation.runOnMainSync(() -> {
+            mPlayerView = new PlayerView(mContext);
+            mPlayerInstance = new PlayerInstance(mContext, mPlayerView, null);
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mInstrumentation.runOnMainSync(() -> {
+            mPlayerInstance.stop();
+            mPlayerInstance.close();
+        });
+        mServer.close();
+    }
+
+    @Test
+    public void prepareToReadyAndSeek() throws Exception {
+        List<Long> coldMs = new ArrayList<>();
+        List<Long> warmMs = new ArrayList<>();
+        List<Long> seekMs = new ArrayList<>();
+        // A fresh name per iteration and per run, so the cold start really misses the cache.
+        String runId = Long.toString(System.currentTimeMillis());
+        for (int i = 0; i < ITERATIONS; i++) {
+            String url = mServer.getUrl("fixture-" + runId + "-" + i + ".mp4");
+            coldMs.add(measurePlay(url));
+            seekMs.add(measureSeek(SEEK_POSITION_MS));
+            mInstrumentation.runOnMainSync(() -> {
+                mPlayerInstance.stop();
+                // Stopping kept the seek position, the warm start has to load from 0 too.
+                mPlayerInstance.seek(0, 0);
+            });
+            warmMs.add(measurePlay(url));
+            mInstrumentation.runOnMainSync(() -> mPlayerInstance.stop());
+        }
+
+        JSONObject results = new JSONObject()
+                .put("benchmark", LOG_TAG)
+                .put("device", Build.MANUFACTURER + " " + Build.MODEL)
+                .put("sdk", Build.VERSION.SDK_INT)
+                .put("timestamp", System.currentTimeMillis())
+                .put("iterations", ITERATIONS)
+                .put("requests", mServer.getRequestCount())
+                .put("metrics", new JSONObject()
+                        .put("prepareToReadyColdMs", toJson(coldMs))
+                        .put("prepareToReadyWarmMs", toJson(warmMs))
+                        .put("seekToReadyMs", toJson(seekMs)));
+        File file = writeResults(results);
+
+        Bundle status = new Bundle();
+        status.putString("results", results.toString());
+        status.putString("file", file.getPath());
+        mInstrumentation.sendStatus(0, status);
+        Log.d(LOG_TAG, "Results written to " + file + ": " + results);
+    }
+
+    private long measurePlay(String url) throws InterruptedException {
+        ReadyListener listener = new ReadyListener(false);
+        long[] startMs = new long[1];
+        mInstrumentation.runOnMainSync(() -> {
+            startMs[0] = SystemClock.elapsedRealtime();
+            mPlayerInstance.play(url);
+            listener.attach((SimpleExoPlayer) mPlayerView.getPlayer());
+        });
+        return listener.awaitReady() - startMs[0];
+    }
+
+    private long measureSeek(long positionMs) throws InterruptedException {
+        ReadyListener listener = new ReadyListener(true);
+        long[] startMs = new long[1];
+        mInstrumentation.runOnMainSync(() -> {
+            listener.attach((SimpleExoPlayer) mPlayerView.getPlayer());
+            startMs[0] = SystemClock.elapsedRealtime();
+            mPlayerInstance.seek(positionMs, 0);
+        });
+        return listener.awaitReady() - startMs[0];
+    }
+
+    private static JSONObject toJson(List<Long> samples) throws JSONException {
+        Histogram histogram = new Histogram();
+        JSONArray values = new JSONArray();
+        for (long sample : samples) {
+            histogram.record(sample);
+            values.put(sample);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        return new JSONObject()
+                .put("min", snapshot.min)
+                .put("mean", snapshot.mean())
+                .put("max", snapshot.max)
+                .put("median", median(samples))
+                .put("samples", values);
+    }
+
+    private static long median(List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private File writeResults(JSONObject results) throws IOException, JSONException {
+        File dir = new File(mContext.getExternalFilesDir(null), "benchmark");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File file = new File(dir, "player_startup_" + results.getLong("timestamp") + ".json");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(results.toString(2));
+        }
+        return file;
+    }
+
+    /**
+     * Records when the player next becomes ready. For a seek, only a ready state after the
+     * seek was processed counts.
+     */
+    private static class ReadyListener implements Player.EventListener {
+
+        private final CountDownLatch mReady = new CountDownLatch(1);
+        private final boolean mWaitForSeek;
+        private SimpleExoPlayer mPlayer;
+        private boolean mSeekProcessed;
+        private volatile long mReadyMs;
+
+        ReadyListener(boolean waitForSeek) {
+            mWaitForSeek = waitForSeek;
+        }
+
+        void attach(SimpleExoPlayer player) {
+            mPlayer = player;
+            player.addListener(this);
+        }
+
+        @Override
+        public void onSeekProcessed() {
+            mSeekProcessed = true;
+            if (mPlayer.getPlaybackState() == Player.STATE_READY) {
+                onReady();
+            }
+        }
+
+        @Override
+        public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+            if (playbackState == Player.STATE_READY && (!mWaitForSeek || mSeekProcessed)) {
+                onReady();
+            }
+        }
+
+        private void onReady() {
+            if (mReady.getCount() > 0) {
+                mReadyMs = SystemClock.elapsedRealtime();
+                mPlayer.removeListener(this);
+                mReady.countDown();
+            }
+        }
+
+        long awaitReady() throws InterruptedException {
+            assertTrue("Player did not become ready",
+                    mReady.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            return mReadyMs;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.tejus.exoplayerdemo;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.ui.PlayerView;
+import com.tejus.exoplayerdemo.videoplayer.PlayerInstance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays the fixture through {@link PlayerInstance} from a {@link FaultInjectingMediaServer}
+ * under scripted network conditions and checks startup time and rebuffer ratio against
+ * budgets. The rebuffer ratio is the time spent buffering after the first ready state over
+ * the time from there to the end of playback.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RebufferRegressionTest {
+
+    private static final String LOG_TAG = RebufferRegressionTest.class.getSimpleName();
+    private static final long TIMEOUT_MS = 60000;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private Context mContext;
+    private File mFixture;
+    // Average bitrate of the fixture, which the throughput of every scenario is relative to.
+    private long mMediaBytesPerSecond;
+    private FaultInjectingMediaServer mServer;
+    private PlayerView mPlayerView;
+    private PlayerInstance mPlayerInstance;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mFixture = FixtureMedia.create(new File(mContext.getCacheDir(), "fixture.mp4"));
+        mMediaBytesPerSecond = mFixture.length() * 1000 / FixtureMedia.DURATION_MS;
+        mServer = new FaultInjectingMediaServer(mFixture);
+        mInstrumentation.runOnMainSync(() -> {
+            mPlayerView = new PlayerView(mContext);
+            mPlayerInstance = new PlayerInstance(mContext, mPlayerView, null);
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mInstrumentation.runOnMainSync(() -> {
+            mPlayerInstance.stop();
+            mPlayerInstance.close();
+        });
+        mServer.close();
+    }
+
+    @Test
+    public void cleanNetwork() throws Exception {
+        Result result = play("clean");
+        assertBudget(result, 1000, 0.01);
+    }
+
+    @Test
+    public void highLatencyAndCappedThroughput() throws Exception {
+        mServer.setLatency(300).setThroughput(2 * mMediaBytesPerSecond);
+        Result result = play("latency");
+        assertBudget(result, 2500, 0.05);
+    }
+
+    @Test
+    public void midStreamStall() throws Exception {
+        mServer.setThroughput(mMediaBytesPerSecond * 3 / 2)
+                .stallAt(mFixture.length() * 6 / 10, 2000);
+        Result result = play("stall");
+        assertTrue("Stall was not injected", mServer.getFaultCount() > 0);
+        assertBudget(result, 1500, 0.2);
+    }
+
+    @Test
+    public void droppedConnection() throws Exception {
+        mServer.setThroughput(2 * mMediaBytesPerSecond)
+                .dropAt(mFixture.length() * 4 / 10);
+        Result result = play("drop");
+        assertTrue("Drop was not injected", mServer.getFaultCount() > 0);
+        assertBudget(result, 1500, 0.1);
+    }
+
+    @Test
+    public void serverErrorsAtStart() throws Exception {
+        mServer.failNext(2, 503);
+        Result result = play("errors");
+        assertBudget(result, 3000, 0.01);
+    }
+
+    /**
+     * Guards the measurement itself: a link slower than the media must show up as rebuffering.
+     */
+    @Test
+    public void starvedLinkIsReportedAsRebuffering() throws Exception {
+        mServer.setThroughput(mMediaBytesPerSecond * 6 / 10);
+        Result result = play("starved");
+        assertTrue("Expected rebuffering on a starved link, got " + result,
+                result.getRebufferRatio() > 0.1);
+    }
+
+    private Result play(String scenario) throws InterruptedException {
+        // A fresh name per run, so nothing is served from the media cache.
+        String url = mServer.getUrl(scenario + "-" + System.currentTimeMillis() + ".mp4");
+        PlaybackRecorder recorder = new PlaybackRecorder();
+        mInstrumentation.runOnMainSync(() -> {
+            recorder.start();
+            mPlayerInstance.play(url);
+            recorder.attach((SimpleExoPlayer) mPlayerView.getPlayer());
+        });
+        Result result = recorder.awaitEnded();
+        Log.d(LOG_TAG, scenario + ": " + result + ", " + mServer.getRequestCount() + " requests");
+        return result;
+    }
+
+    private static void assertBudget(Result result, long maxStartupMs, double maxRebufferRatio) {
+        assertTrue("Startup over budget of " + maxStartupMs + "ms: " + result,
+                result.startupMs <= maxStartupMs);
+        assertTrue("Rebuffer ratio over budget of " + maxRebufferRatio + ": " + result,
+                result.getRebufferRatio() <= maxRebufferRatio);
+    }
+
+    private static class Result {
+
+        final long startupMs;
+        final long playingMs;
+        final long rebufferMs;
+        final int rebufferCount;
+
+        Result(long startupMs, long playingMs, long rebufferMs, int rebufferCount) {
+            this.startupMs = startupMs;
+            this.playingMs = playingMs;
+            this.rebufferMs = rebufferMs;
+            this.rebufferCount = rebufferCount;
+        }
+
+        double getRebufferRatio() {
+            long totalMs = playingMs + rebufferMs;
+            return totalMs == 0 ? 0 : (double) rebufferMs / totalMs;
+        }
+
+        @Override
+        public String toString() {
+            return "startup " + startupMs + "ms, " + rebufferCount + " rebuffers, "
+                    + rebufferMs + "ms rebuffering in " + (playingMs + rebufferMs)
+                    + "ms, ratio " + getRebufferRatio();
+        }
+    }
+
+    /**
+     * Follows one playback from play() to the end, timing the first ready state and every
+     * buffering state after it. Called on the main thread except for awaitEnded().
+     */
+    private static class PlaybackRecorder implements Player.EventListener {
+
+        private final CountDownLatch mEnded = new CountDownLatch(1);
+        private SimpleExoPlayer mPlayer;
+        private long mStartMs;
+        private long mReadyMs = -1;
+        private long mBufferingSinceMs = -1;
+        private long mRebufferMs;
+        private int mRebufferCount;
+        private volatile Result mResult;
+        private volatile ExoPlaybackException mError;
+
+        void start() {
+            mStartMs = SystemClock.elapsedRealtime();
+        }
+
+        void attach(SimpleExoPlayer player) {
+            mPlayer = player;
+            player.addListener(this);
+        }
+
+        @Override
+        public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+            long nowMs = SystemClock.elapsedRealtime();
+            if (mBufferingSinceMs >= 0 && playbackState != Player.STATE_BUFFERING) {
+                mRebufferMs += nowMs - mBufferingSinceMs;
+                mBufferingSinceMs = -1;
+            }
+            switch (playbackState) {
+                case Player.STATE_READY:
+                    if (mReadyMs < 0) {
+                        mReadyMs = nowMs;
+                    }
+                    break;
+                case Player.STATE_BUFFERING:
+                    if (mReadyMs >= 0 && mBufferingSinceMs < 0) {
+                        mBufferingSinceMs = nowMs;
+                        mRebufferCount++;
+                    }
+                    break;
+                case Player.STATE_ENDED:
+                    if (mReadyMs >= 0) {
+                        finish(new Result(mReadyMs - mStartMs,
+                                nowMs - mReadyMs - mRebufferMs, mRebufferMs, mRebufferCount));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onPlayerError(ExoPlaybackException error) {
+            mError = error;
+            finish(null);
+        }
+
+        private void finish(Result result) {
+            mResult = result;
+            mPlayer.removeListener(this);
+            mEnded.countDown();
+        }
+
+        Result awaitEnded() throws InterruptedException {
+            assertTrue("Playback did not end",
+                    mEnded.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertNull("Playback failed", mError);
+            return mResult;
+        }
+    }
+}
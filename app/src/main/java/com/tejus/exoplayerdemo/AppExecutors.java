@@ -3,48 +3,66 @@ package com.tejus.exoplayerdemo;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-class AppExecutors {
+public class AppExecutors {
+
+    private static final String LOG_TAG = AppExecutors.class.getSimpleName();
+    private static final int DISK_QUEUE_CAPACITY = 64;
+    private static final int NETWORK_THREADS = 3;
+    private static final int NETWORK_QUEUE_CAPACITY = 32;
 
     private static final Object LOCK = new Object();
-    private static AppExecutors sInstance;
-    private final Executor diskIO;
+    private static volatile AppExecutors sInstance;
+    private final TaskScheduler diskIO;
     private final Executor mainThread;
-    private final Executor networkIO;
+    private final TaskScheduler networkIO;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    private AppExecutors(TaskScheduler diskIO, TaskScheduler networkIO, Executor mainThread) {
         this.diskIO = diskIO;
         this.networkIO = networkIO;
         this.mainThread = mainThread;
     }
 
-    static AppExecutors getInstance() {
+    public static AppExecutors getInstance() {
         if (sInstance == null) {
             synchronized (LOCK) {
-                sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
-                        Executors.newFixedThreadPool(3),
-                        new MainThreadExecutor());
+                if (sInstance == null) {
+                    sInstance = new AppExecutors(
+                            new TaskScheduler("diskIO", 1, DISK_QUEUE_CAPACITY,
+                                    new BackgroundThreadFactory("diskIO")),
+                            new TaskScheduler("networkIO", NETWORK_THREADS, NETWORK_QUEUE_CAPACITY,
+                                    new BackgroundThreadFactory("networkIO")),
+                            new MainThreadExecutor());
+                }
             }
         }
         return sInstance;
     }
 
-    Executor diskIO() {
+    public TaskScheduler diskIO() {
         return diskIO;
     }
 
-    Executor mainThread() {
+    public Executor mainThread() {
         return mainThread;
     }
 
-    Executor networkIO() {
+    public TaskScheduler networkIO() {
         return networkIO;
     }
 
+    public void logMetrics() {
+        Log.d(LOG_TAG, diskIO.getMetrics().toString());
+        Log.d(LOG_TAG, networkIO.getMetrics().toString());
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
@@ -53,4 +71,21 @@ class AppExecutors {
             mainThreadHandler.post(command);
         }
     }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        BackgroundThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, mName + "-" + mCount.incrementAndGet());
+        }
+    }
 }
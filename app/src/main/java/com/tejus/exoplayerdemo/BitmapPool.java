@@ -0,0 +1,131 @@
+package com.tejus.exoplayerdemo;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bitmaps that went out of use, for BitmapFactory to decode into instead of allocating.
+ * Bitmaps are bucketed by allocation size rounded up to a power of two, and the pool is
+ * bounded by bytes, dropping the longest pooled bitmap first. Hardware and immutable
+ * bitmaps can't be decoded into and are not pooled. Thread safe.
+ */
+class BitmapPool {
+
+    private static final String LOG_TAG = BitmapPool.class.getSimpleName();
+    private static final Object LOCK = new Object();
+    private static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    private static volatile BitmapPool sInstance;
+
+    // Bucket index is the allocation size rounded up to a power of two, as an exponent.
+    private final SparseArray<List<Bitmap>> mBuckets = new SparseArray<>();
+    private final ArrayDeque<Bitmap> mOrder = new ArrayDeque<>();
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    private BitmapPool() {
+    }
+
+    static BitmapPool getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new BitmapPool();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a pooled bitmap large enough to decode a width by height image in config into,
+     * or returns null. The bitmap is at most one bucket larger than needed.
+     */
+    @Nullable
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int byteCount = width * height * getBytesPerPixel(config);
+        int bucket = getBucket(byteCount);
+        for (int i = bucket; i <= bucket + 1; i++) {
+            List<Bitmap> bitmaps = mBuckets.get(i);
+            if (bitmaps == null) {
+                continue;
+            }
+            Iterator<Bitmap> iterator = bitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getAllocationByteCount() >= byteCount) {
+                    iterator.remove();
+                    mOrder.remove(bitmap);
+                    mBytes -= bitmap.getAllocationByteCount();
+                    mHits++;
+                    return bitmap;
+                }
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || isHardware(bitmap)
+                || bitmap.getAllocationByteCount() > MAX_BYTES || mOrder.contains(bitmap)) {
+            return;
+        }
+        int bucket = getBucket(bitmap.getAllocationByteCount());
+        List<Bitmap> bitmaps = mBuckets.get(bucket);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<>();
+            mBuckets.put(bucket, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        mOrder.addLast(bitmap);
+        mBytes += bitmap.getAllocationByteCount();
+        while (mBytes > MAX_BYTES) {
+            Bitmap oldest = mOrder.removeFirst();
+            mBuckets.get(getBucket(oldest.getAllocationByteCount())).remove(oldest);
+            mBytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+    }
+
+    synchronized void clear() {
+        for (Bitmap bitmap : mOrder) {
+            bitmap.recycle();
+        }
+        mOrder.clear();
+        mBuckets.clear();
+        mBytes = 0;
+        Log.d(LOG_TAG, "Cleared, " + mHits + " hits, " + mMisses + " misses");
+    }
+
+    private static int getBucket(int byteCount) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, byteCount) - 1);
+    }
+
+    private static boolean isHardware(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+}
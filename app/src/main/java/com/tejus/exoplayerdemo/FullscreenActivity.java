@@ -79,12 +79,14 @@ public class FullscreenActivity extends AppCompatActivity {
     }
 
     private void playVideo() {
-        mPlayerInstance.play(mVideoUri);
+        if (!mPlayerInstance.resume()) {
+            mPlayerInstance.play(mVideoUri);
+        }
         mIsPlayerInitialised = true;
     }
 
     private void sendResultBack() {
-        Bundle resultBundle = mPlayerInstance.stop();
+        Bundle resultBundle = mPlayerInstance.handOff();
         Intent intent = new Intent();
         intent.putExtras(resultBundle);
         setResult(RESULT_OK, intent);
@@ -116,11 +118,17 @@ public class FullscreenActivity extends AppCompatActivity {
     protected void onStop() {
         super.onStop();
         Log.d(LOG_TAG, "onStop()");
-        if (Util.SDK_INT >= 24) {
+        if (Util.SDK_INT >= 24 && !moveToBackground()) {
             stopPlayer();
         }
     }
 
+    private boolean moveToBackground() {
+        return !isChangingConfigurations() && !isFinishing()
+                && getResources().getBoolean(R.bool.background_audio)
+                && mPlayerInstance.moveToBackground();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
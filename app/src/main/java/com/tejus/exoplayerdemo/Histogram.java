@@ -0,0 +1,98 @@
+package com.tejus.exoplayerdemo;
+
+import java.util.Arrays;
+
+/**
+ * Compact histogram of non negative values with power of two buckets. Bucket {@code i}
+ * holds values in {@code [2^(i-1), 2^i)}, bucket 0 holds zero.
+ */
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 40;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(mBuckets.clone(), mCount, mSum, mCount == 0 ? 0 : mMin, mMax);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mBuckets, 0);
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    private static int bucketOf(long value) {
+        return Math.min(64 - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    public static class Snapshot {
+
+        public final long count;
+        public final long sum;
+        public final long min;
+        public final long max;
+        private final long[] mBuckets;
+
+        Snapshot(long[] buckets, long count, long sum, long min, long max) {
+            mBuckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Returns an upper bound for the given percentile, accurate to within a factor of two.
+         */
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long[] getBuckets() {
+            return mBuckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " mean=" + mean() + " p50=" + percentile(50)
+                    + " p90=" + percentile(90) + " p99=" + percentile(99) + " max=" + max;
+        }
+    }
+}
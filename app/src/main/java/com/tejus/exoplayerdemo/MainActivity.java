@@ -2,9 +2,9 @@ package com.tejus.exoplayerdemo;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.media.MediaMetadataRetriever;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
@@ -15,9 +15,11 @@ import android.widget.ImageView;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ui.PlayerView;
 import com.google.android.exoplayer2.util.Util;
+import com.tejus.exoplayerdemo.videoplayer.MediaPrefetcher;
+import com.tejus.exoplayerdemo.videoplayer.Origins;
 import com.tejus.exoplayerdemo.videoplayer.PlayerInstance;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -38,9 +40,16 @@ public class MainActivity extends AppCompatActivity {
     private long mCurrentPosition;
     private int mCurrentWindowIndex;
     private boolean mPlayWhenReady;
+    private ThumbnailCache.Request mPreviewRequest;
+    private View.OnLayoutChangeListener mPreviewLayoutListener;
+    private Bitmap mPreviewBitmap;
+    private MediaPrefetcher mPrefetcher;
+    private final TaskGroup mTaskGroup = new TaskGroup(LOG_TAG);
+    private boolean mFullyDrawnReported;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        TraceCompat.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
@@ -48,6 +57,8 @@ public class MainActivity extends AppCompatActivity {
         mPreviewImage = findViewById(R.id.iv_preview);
         mPlayerView = findViewById(R.id.player_view);
         mFullscreenToggle = findViewById(R.id.exo_fullscreen);
+        Origins.getInstance().setMirrors(VIDEO_URL,
+                Arrays.asList(getResources().getStringArray(R.array.video_mirrors)));
 
         if (savedInstanceState != null) {
             mCurrentPosition = savedInstanceState.getLong(CURRENT_POSITION_KEY);
@@ -69,12 +80,19 @@ public class MainActivity extends AppCompatActivity {
 
         mFullscreenToggle.setOnClickListener((v) -> {
             Log.d(LOG_TAG, "Fullscreen toggle clicked");
+            Bundle fullscreenBundle = mPlayerInstance.handOff();
+            fullscreenBundle.putString(VIDEO_URL_KEY, VIDEO_URL);
             Intent intent = new Intent(this, FullscreenActivity.class);
-            intent.putExtras(bundle);
+            intent.putExtras(fullscreenBundle);
             startActivityForResult(intent, FULLSCREEN_REQUEST_CODE);
         });
 
         mPlayerInstance = new PlayerInstance(this, mPlayerView, bundle);
+        if (getResources().getBoolean(R.bool.prefetch_on_preview)) {
+            mPrefetcher = new MediaPrefetcher(this,
+                    mTaskGroup.on(AppExecutors.getInstance().networkIO()));
+        }
+        TraceCompat.endSection();
     }
 
     @Override
@@ -105,6 +123,9 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void playVideo() {
+        if (mPrefetcher != null) {
+            mPrefetcher.cancel();
+        }
         mPreviewFrame.setVisibility(View.GONE);
         mPlayerView.setVisibility(View.VISIBLE);
         mPlayerInstance.play(VIDEO_URL);
@@ -113,33 +134,70 @@ public class MainActivity extends AppCompatActivity {
 
     private void initialisePreview() {
         Log.d(LOG_TAG, "initialisePreview()");
-        AppExecutors.getInstance().networkIO().execute(() -> {
-            Bitmap image = getVideoBitmap(VIDEO_URL);
-            AppExecutors.getInstance().mainThread().execute(() ->
-                    mPreviewImage.setImageBitmap(image));
-        });
+        cancelPreview();
+        loadPreview();
+        // The preview is up, playback is likely to follow.
+        mPlayerInstance.warmUp();
         mPreviewImage.setOnClickListener(v -> {
             playVideo();
         });
+        if (mPrefetcher != null && !isPlayerInitialised) {
+            mPrefetcher.start(VIDEO_URL);
+        }
     }
 
-    private Bitmap getVideoBitmap(String path) {
-        Log.d(LOG_TAG, "getVideoBitmap()");
-        Bitmap bitmap = null;
-        MediaMetadataRetriever retriever = null;
-
-        try {
-            retriever = new MediaMetadataRetriever();
-            retriever.setDataSource(path, new HashMap<>());
-            bitmap = retriever.getFrameAtTime();
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Exception caught in getVideoBitmap: " + e.getMessage());
-        } finally {
-            if (null != retriever) {
-                retriever.release();
-            }
+    /**
+     * Loads the preview frame at the size of the preview image, waiting for its first layout
+     * if needed.
+     */
+    private void loadPreview() {
+        if (mPreviewImage.getWidth() == 0 || mPreviewImage.getHeight() == 0) {
+            mPreviewLayoutListener = (v, left, top, right, bottom,
+                                      oldLeft, oldTop, oldRight, oldBottom) -> {
+                if (right > left && bottom > top) {
+                    v.removeOnLayoutChangeListener(mPreviewLayoutListener);
+                    mPreviewLayoutListener = null;
+                    loadPreview();
+                }
+            };
+            mPreviewImage.addOnLayoutChangeListener(mPreviewLayoutListener);
+            return;
+        }
+        mPreviewRequest = ThumbnailCache.getInstance(this).load(VIDEO_URL,
+                mPreviewImage.getWidth(), mPreviewImage.getHeight(), image -> {
+                    mPreviewRequest = null;
+                    releasePreviewBitmap();
+                    mPreviewBitmap = image;
+                    mPreviewImage.setImageBitmap(image);
+                    // Marks cold start to first interactive frame for "am start -W" and systrace.
+                    if (!mFullyDrawnReported) {
+                        mFullyDrawnReported = true;
+                        reportFullyDrawn();
+                    }
+                });
+    }
+
+    private void cancelPreview() {
+        if (mPreviewLayoutListener != null) {
+            mPreviewImage.removeOnLayoutChangeListener(mPreviewLayoutListener);
+            mPreviewLayoutListener = null;
+        }
+        if (mPreviewRequest != null) {
+            mPreviewRequest.cancel();
+            mPreviewRequest = null;
+        }
+    }
+
+    /**
+     * Hands the preview frame back to the cache, which reuses its memory for the next decode
+     * once nothing else holds it.
+     */
+    private void releasePreviewBitmap() {
+        if (mPreviewBitmap != null) {
+            mPreviewImage.setImageDrawable(null);
+            ThumbnailCache.getInstance(this).release(mPreviewBitmap);
+            mPreviewBitmap = null;
         }
-        return bitmap;
     }
 
     @Override
@@ -173,14 +231,38 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
-        if (Util.SDK_INT >= 24) {
+        cancelPreview();
+        releasePreviewBitmap();
+        mTaskGroup.cancelTasks();
+        if (mPrefetcher != null && !isPlayerInitialised) {
+            mPrefetcher.discard();
+        }
+        if (Util.SDK_INT >= 24 && !moveToBackground()) {
             stopPlayer();
         }
     }
 
+    private boolean moveToBackground() {
+        return !isChangingConfigurations() && !isFinishing()
+                && getResources().getBoolean(R.bool.background_audio)
+                && mPlayerInstance.moveToBackground();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            BitmapPool.getInstance().clear();
+        }
+        if (BuildConfig.DEBUG) {
+            AppExecutors.getInstance().logMetrics();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mTaskGroup.cancel();
         mPlayerInstance.close();
     }
 
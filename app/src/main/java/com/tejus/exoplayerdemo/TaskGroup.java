@@ -0,0 +1,76 @@
+package com.tejus.exoplayerdemo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Tracks the tasks an owner, usually an Activity, submitted to any {@link TaskScheduler} so
+ * they can all be cancelled when the owner goes away.
+ */
+public class TaskGroup {
+
+    private final String mOwner;
+    private final Set<TaskScheduler.Task> mTasks = new LinkedHashSet<>();
+    private boolean mCancelled;
+
+    public TaskGroup(String owner) {
+        mOwner = owner;
+    }
+
+    /**
+     * Returns an executor that submits to the given scheduler on behalf of this group.
+     */
+    public Executor on(TaskScheduler scheduler) {
+        return runnable -> scheduler.submit(this, null, TaskScheduler.Priority.NORMAL, runnable);
+    }
+
+    synchronized void add(TaskScheduler.Task task) {
+        if (mCancelled) {
+            task.cancel();
+            return;
+        }
+        mTasks.add(task);
+    }
+
+    synchronized void remove(TaskScheduler.Task task) {
+        mTasks.remove(task);
+    }
+
+    /**
+     * Cancels every pending and running task of this group. Tasks submitted afterwards are
+     * cancelled straight away.
+     */
+    public void cancel() {
+        synchronized (this) {
+            mCancelled = true;
+        }
+        cancelTasks();
+    }
+
+    /**
+     * Cancels every pending and running task of this group but keeps accepting new ones,
+     * e.g. when the owning Activity stops and may start again.
+     */
+    public void cancelTasks() {
+        List<TaskScheduler.Task> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+        }
+        for (TaskScheduler.Task task : tasks) {
+            task.cancel();
+        }
+    }
+
+    public synchronized int size() {
+        return mTasks.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskGroup(" + mOwner + ")";
+    }
+}
@@ -0,0 +1,294 @@
+package com.tejus.exoplayerdemo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool with a bounded priority queue. Tasks can be tagged with a
+ * {@link TaskGroup} so an owner can cancel everything it submitted, and with a key so that
+ * identical tasks already queued or running are not submitted twice.
+ */
+public class TaskScheduler implements Executor {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final String mName;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<String, Task> mInFlight = new HashMap<>();
+    private final AtomicLong mSequence = new AtomicLong();
+    private final AtomicLong mSubmitted = new AtomicLong();
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mCancelledCount = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mDeduplicated = new AtomicLong();
+    private final AtomicLong mRanOnCaller = new AtomicLong();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final Histogram mWaitMs = new Histogram();
+    private final Histogram mRunMs = new Histogram();
+
+    public TaskScheduler(String name, int threads, int queueCapacity) {
+        this(name, threads, queueCapacity, new NamedThreadFactory(name));
+    }
+
+    public TaskScheduler(String name, int threads, int queueCapacity, ThreadFactory threadFactory) {
+        mName = name;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new BoundedPriorityQueue(queueCapacity), threadFactory);
+    }
+
+    /**
+     * Runs a fire and forget task. Its caller has no way to handle a rejection, so when the
+     * queue is full the task runs on the calling thread instead of being lost.
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        try {
+            submit(null, null, Priority.NORMAL, runnable);
+        } catch (RejectedExecutionException e) {
+            mRanOnCaller.incrementAndGet();
+            runnable.run();
+        }
+    }
+
+    /**
+     * Submits a task. If a task with the same non null key is still queued or running, that
+     * task is returned instead and the runnable is dropped.
+     *
+     * @throws RejectedExecutionException if the queue is full or the scheduler is shut down.
+     */
+    public Task submit(TaskGroup group, String key, Priority priority, Runnable runnable) {
+        Task task;
+        synchronized (mInFlight) {
+            if (key != null) {
+                Task existing = mInFlight.get(key);
+                if (existing != null && !existing.isCancelled()) {
+                    mDeduplicated.incrementAndGet();
+                    return existing;
+                }
+            }
+            task = new Task(group, key, priority, mSequence.getAndIncrement(), runnable);
+            if (key != null) {
+                mInFlight.put(key, task);
+            }
+        }
+        if (group != null) {
+            group.add(task);
+        }
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            mRejected.incrementAndGet();
+            task.finish();
+            throw new RejectedExecutionException(mName + " rejected task " + key, e);
+        }
+        mSubmitted.incrementAndGet();
+        updateMaxQueueDepth(mExecutor.getQueue().size());
+        return task;
+    }
+
+    private void updateMaxQueueDepth(int depth) {
+        int max;
+        do {
+            max = mMaxQueueDepth.get();
+        } while (depth > max && !mMaxQueueDepth.compareAndSet(max, depth));
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(mName, mExecutor.getQueue().size(), mMaxQueueDepth.get(),
+                mSubmitted.get(), mCompleted.get(), mCancelledCount.get(), mRejected.get(),
+                mDeduplicated.get(), mRanOnCaller.get(), mWaitMs.snapshot(), mRunMs.snapshot());
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    public static class Metrics {
+
+        public final String name;
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final long submitted;
+        public final long completed;
+        public final long cancelled;
+        public final long rejected;
+        public final long deduplicated;
+        public final long ranOnCaller;
+        public final Histogram.Snapshot waitMs;
+        public final Histogram.Snapshot runMs;
+
+        Metrics(String name, int queueDepth, int maxQueueDepth, long submitted, long completed,
+                long cancelled, long rejected, long deduplicated, long ranOnCaller,
+                Histogram.Snapshot waitMs, Histogram.Snapshot runMs) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.rejected = rejected;
+            this.deduplicated = deduplicated;
+            this.ranOnCaller = ranOnCaller;
+            this.waitMs = waitMs;
+            this.runMs = runMs;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": queue=" + queueDepth + " maxQueue=" + maxQueueDepth
+                    + " submitted=" + submitted + " completed=" + completed
+                    + " cancelled=" + cancelled + " rejected=" + rejected
+                    + " deduplicated=" + deduplicated + " ranOnCaller=" + ranOnCaller
+                    + "\n waitMs: " + waitMs + "\n runMs: " + runMs;
+        }
+    }
+
+    /**
+     * A submitted unit of work. Cancelling a queued task stops it from running, cancelling a
+     * running task interrupts its thread.
+     */
+    public class Task implements Runnable, Comparable<Task> {
+
+        private final TaskGroup mGroup;
+        private final String mKey;
+        private final Priority mPriority;
+        private final long mSequence;
+        private final long mSubmitTimeNs = System.nanoTime();
+        private Runnable mRunnable;
+        private Thread mThread;
+        private boolean mCancelled;
+        private boolean mFinished;
+
+        Task(TaskGroup group, String key, Priority priority, long sequence, Runnable runnable) {
+            mGroup = group;
+            mKey = key;
+            mPriority = priority;
+            mSequence = sequence;
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            Runnable runnable;
+            synchronized (this) {
+                if (mCancelled || mFinished) {
+                    return;
+                }
+                mThread = Thread.currentThread();
+                runnable = mRunnable;
+            }
+            long startNs = System.nanoTime();
+            mWaitMs.record(TimeUnit.NANOSECONDS.toMillis(startNs - mSubmitTimeNs));
+            try {
+                runnable.run();
+            } finally {
+                mRunMs.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+                synchronized (this) {
+                    mThread = null;
+                }
+                // Clear a cancellation interrupt so it does not leak into the next task.
+                Thread.interrupted();
+                if (finish()) {
+                    mCompleted.incrementAndGet();
+                }
+            }
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                if (mCancelled || mFinished) {
+                    return;
+                }
+                mCancelled = true;
+                if (mThread != null) {
+                    mThread.interrupt();
+                }
+            }
+            mCancelledCount.incrementAndGet();
+            mExecutor.remove(this);
+            finish();
+        }
+
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private boolean finish() {
+            synchronized (this) {
+                if (mFinished) {
+                    return false;
+                }
+                mFinished = true;
+                mRunnable = null;
+            }
+            if (mKey != null) {
+                synchronized (mInFlight) {
+                    if (mInFlight.get(mKey) == this) {
+                        mInFlight.remove(mKey);
+                    }
+                }
+            }
+            if (mGroup != null) {
+                mGroup.remove(this);
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int result = mPriority.compareTo(other.mPriority);
+            return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private static class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+
+        private final int mCapacity;
+
+        BoundedPriorityQueue(int capacity) {
+            mCapacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            synchronized (this) {
+                if (size() >= mCapacity) {
+                    return false;
+                }
+                return super.offer(runnable);
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, mCapacity - size());
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.tejus.exoplayerdemo;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.tejus.exoplayerdemo.videoplayer.HttpMediaDataSource;
+import com.tejus.exoplayerdemo.videoplayer.HttpStack;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Two level cache of preview frames keyed by video url. Frames are kept in a byte bounded
+ * memory LRU and as downsampled JPEGs on disk, so only the first request for a url pays
+ * for the network round trip and the frame decode. Frames are decoded at the size they are
+ * shown at, as hardware bitmaps where available and otherwise into bitmaps from the
+ * {@link BitmapPool}. Frames handed out must be given back with {@link #release(Bitmap)};
+ * frames that are neither shown nor cached go back to the pool.
+ */
+class ThumbnailCache {
+
+    private static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+    private static final String CACHE_DIR = "thumbnails";
+    private static final int MAX_WIDTH = 720;
+    private static final int JPEG_QUALITY = 85;
+    private static final long MAX_DISK_BYTES = 10 * 1024 * 1024;
+
+    interface Callback {
+        void onThumbnailLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private static ThumbnailCache sInstance;
+
+    private final File mCacheDir;
+    private final HttpStack mHttpStack;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final Map<String, Job> mJobs = new HashMap<>();
+    private final Map<Bitmap, Integer> mRefCounts = new HashMap<>();
+    private final Set<Bitmap> mCached = new HashSet<>();
+
+    private ThumbnailCache(Context context) {
+        mCacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        mHttpStack = HttpStack.getInstance(context);
+        int maxMemoryBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                mCached.remove(oldValue);
+                if (!mRefCounts.containsKey(oldValue)) {
+                    BitmapPool.getInstance().put(oldValue);
+                }
+            }
+        };
+    }
+
+    @MainThread
+    static ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads the preview frame for the given url, decoded to fit the given size. The callback
+     * is invoked on the main thread, synchronously if the frame is already in memory.
+     * Requests for a url and size that are already being loaded share the same extraction.
+     */
+    @MainThread
+    Request load(String url, int width, int height, Callback callback) {
+        String key = url + "@" + width + "x" + height;
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            retain(bitmap);
+            callback.onThumbnailLoaded(bitmap);
+            return new Request(null, callback);
+        }
+
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key, url, width, height);
+            mJobs.put(key, job);
+            job.start();
+        }
+        job.mCallbacks.add(callback);
+        return new Request(job, callback);
+    }
+
+    /**
+     * Gives back a frame passed to a callback once it is no longer shown.
+     */
+    @MainThread
+    void release(Bitmap bitmap) {
+        Integer refCount = mRefCounts.get(bitmap);
+        if (refCount == null) {
+            return;
+        }
+        if (refCount > 1) {
+            mRefCounts.put(bitmap, refCount - 1);
+            return;
+        }
+        mRefCounts.remove(bitmap);
+        if (!mCached.contains(bitmap)) {
+            BitmapPool.getInstance().put(bitmap);
+        }
+    }
+
+    private void retain(Bitmap bitmap) {
+        Integer refCount = mRefCounts.get(bitmap);
+        mRefCounts.put(bitmap, refCount == null ? 1 : refCount + 1);
+    }
+
+    private File getDiskFile(String url) {
+        return new File(mCacheDir, hash(url) + ".jpg");
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    @Nullable
+    private Bitmap readFromDisk(String url, int width, int height) {
+        File file = getDiskFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return decode(file, width, height);
+    }
+
+    /**
+     * Decodes file subsampled to the smallest size that still covers width by height.
+     */
+    @Nullable
+    private static Bitmap decode(File file, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width
+                && options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // Hardware bitmaps keep their pixels in graphics memory only.
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        // Frames are opaque, so half the bytes of ARGB_8888 lose nothing that shows.
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = BitmapPool.getInstance()
+                .get(sampledWidth, sampledHeight, Bitmap.Config.RGB_565);
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit after all.
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    private boolean writeToDisk(String url, Bitmap bitmap) {
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create " + mCacheDir);
+            return false;
+        }
+        File file = getDiskFile(url);
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Exception caught in writeToDisk: " + e.getMessage());
+            file.delete();
+            return false;
+        }
+        trimDisk();
+        return true;
+    }
+
+    private void trimDisk() {
+        File[] files = mCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (totalBytes <= MAX_DISK_BYTES) {
+                break;
+            }
+            totalBytes -= file.length();
+            file.delete();
+        }
+    }
+
+    @Nullable
+    private Bitmap extractFrame(String url) {
+        Log.d(LOG_TAG, "extractFrame()");
+        Bitmap bitmap = null;
+        MediaMetadataRetriever retriever = null;
+
+        try {
+            retriever = new MediaMetadataRetriever();
+            retriever.setDataSource(new HttpMediaDataSource(mHttpStack, url));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                // Skips the full resolution frame, the scaled one fits in MAX_WIDTH square.
+                bitmap = retriever.getScaledFrameAtTime(-1,
+                        MediaMetadataRetriever.OPTION_CLOSEST_SYNC, MAX_WIDTH, MAX_WIDTH);
+            } else {
+                bitmap = retriever.getFrameAtTime();
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Exception caught in extractFrame: " + e.getMessage());
+        } finally {
+            if (null != retriever) {
+                retriever.release();
+            }
+        }
+        return bitmap == null ? null : downsample(bitmap);
+    }
+
+    private static Bitmap downsample(Bitmap bitmap) {
+        if (bitmap.getWidth() <= MAX_WIDTH) {
+            return bitmap;
+        }
+        int height = Math.round((float) bitmap.getHeight() * MAX_WIDTH / bitmap.getWidth());
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, MAX_WIDTH, height, true);
+        bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * Handle to a pending load. Cancelling the last request waiting on a url abandons
+     * the extraction for that url.
+     */
+    class Request {
+
+        @Nullable
+        private final Job mJob;
+        private final Callback mCallback;
+
+        private Request(@Nullable Job job, Callback callback) {
+            mJob = job;
+            mCallback = callback;
+        }
+
+        @MainThread
+        void cancel() {
+            if (mJob == null || !mJob.mCallbacks.remove(mCallback)) {
+                return;
+            }
+            if (mJob.mCallbacks.isEmpty()) {
+                Log.d(LOG_TAG, "Cancelling thumbnail job for " + mJob.mUrl);
+                mJob.cancel();
+                mJobs.remove(mJob.mKey);
+            }
+        }
+    }
+
+    private class Job {
+
+        private final String mKey;
+        private final String mUrl;
+        private final int mWidth;
+        private final int mHeight;
+        private final List<Callback> mCallbacks = new ArrayList<>();
+        private volatile boolean mCancelled;
+        private volatile TaskScheduler.Task mNetworkTask;
+
+        Job(String key, String url, int width, int height) {
+            mKey = key;
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        void start() {
+            AppExecutors.getInstance().diskIO().execute(() -> {
+                if (mCancelled) {
+                    return;
+                }
+                Bitmap bitmap = readFromDisk(mUrl, mWidth, mHeight);
+                if (bitmap != null) {
+                    deliver(bitmap);
+                    return;
+                }
+                try {
+                    mNetworkTask = AppExecutors.getInstance().networkIO().submit(null,
+                            "thumbnail:" + mUrl, TaskScheduler.Priority.HIGH, this::extract);
+                } catch (RejectedExecutionException e) {
+                    Log.e(LOG_TAG, "Exception caught in start: " + e.getMessage());
+                    deliver(null);
+                }
+                if (mCancelled) {
+                    cancelNetworkTask();
+                }
+            });
+        }
+
+        private void extract() {
+            if (mCancelled) {
+                return;
+            }
+            Bitmap frame = extractFrame(mUrl);
+            if (frame == null) {
+                deliver(null);
+                return;
+            }
+            AppExecutors.getInstance().diskIO().execute(() -> {
+                Bitmap bitmap = writeToDisk(mUrl, frame)
+                        ? decode(getDiskFile(mUrl), mWidth, mHeight) : null;
+                if (bitmap == null) {
+                    deliver(frame);
+                    return;
+                }
+                frame.recycle();
+                deliver(bitmap);
+            });
+        }
+
+        void cancel() {
+            mCancelled = true;
+            cancelNetworkTask();
+        }
+
+        private void cancelNetworkTask() {
+            TaskScheduler.Task task = mNetworkTask;
+            if (task != null) {
+                task.cancel();
+            }
+        }
+
+        private void deliver(@Nullable Bitmap bitmap) {
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (mJobs.get(mKey) == this) {
+                    mJobs.remove(mKey);
+                }
+                if (bitmap != null) {
+                    mCached.add(bitmap);
+                    mMemoryCache.put(mKey, bitmap);
+                }
+                if (mCancelled) {
+                    return;
+                }
+                for (Callback callback : mCallbacks) {
+                    if (bitmap != null) {
+                        retain(bitmap);
+                    }
+                    callback.onThumbnailLoaded(bitmap);
+                }
+                mCallbacks.clear();
+            });
+        }
+    }
+}
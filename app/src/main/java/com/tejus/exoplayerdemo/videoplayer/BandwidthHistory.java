@@ -0,0 +1,111 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.NetworkInfo;
+import android.net.RouteInfo;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+/**
+ * Remembers the last bandwidth estimate per network, so a new bandwidth meter can start from
+ * what this network delivered before instead of a fixed guess. Older estimates count for less
+ * and fade back towards the default.
+ */
+class BandwidthHistory {
+
+    private static final String PREFS_NAME = "bandwidth_history";
+    private static final String ESTIMATE_SUFFIX = ".estimate";
+    private static final String TIME_SUFFIX = ".time";
+    private static final long HALF_LIFE_MS = 24 * 60 * 60 * 1000;
+    private static final long MAX_AGE_MS = 7 * HALF_LIFE_MS;
+    private static final long MIN_WRITE_INTERVAL_MS = 10000;
+    static final String NO_NETWORK = "none";
+
+    private final SharedPreferences mPreferences;
+    private String mLastWrittenKey;
+    private long mLastWriteRealtimeMs;
+
+    BandwidthHistory(Context context) {
+        mPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Identifies the active network by its type, its subtype (e.g. LTE) and the cellular APN.
+     * The SSID is hidden without the location permission, so wifi and ethernet networks are
+     * told apart by their default gateway and search domains instead. Networks behind routers
+     * with the same address share a history.
+     */
+    static String getNetworkKey(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager == null ? null
+                : connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return NO_NETWORK;
+        }
+        StringBuilder key = new StringBuilder(networkInfo.getTypeName());
+        if (!TextUtils.isEmpty(networkInfo.getSubtypeName())) {
+            key.append('/').append(networkInfo.getSubtypeName());
+        }
+        if (networkInfo.getType() == ConnectivityManager.TYPE_MOBILE) {
+            if (!TextUtils.isEmpty(networkInfo.getExtraInfo())) {
+                key.append('/').append(networkInfo.getExtraInfo());
+            }
+            return key.toString();
+        }
+        LinkProperties linkProperties =
+                connectivityManager.getLinkProperties(connectivityManager.getActiveNetwork());
+        if (linkProperties != null) {
+            for (RouteInfo route : linkProperties.getRoutes()) {
+                if (route.isDefaultRoute() && route.getGateway() != null) {
+                    key.append('/').append(route.getGateway().getHostAddress());
+                }
+            }
+            if (!TextUtils.isEmpty(linkProperties.getDomains())) {
+                key.append('/').append(linkProperties.getDomains());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the decayed estimate for the network in bits per second, or
+     * {@link DefaultBandwidthMeter#DEFAULT_INITIAL_BITRATE_ESTIMATE} if there is no recent one.
+     */
+    long getEstimate(String networkKey) {
+        long estimate = mPreferences.getLong(networkKey + ESTIMATE_SUFFIX, 0);
+        long ageMs = System.currentTimeMillis() - mPreferences.getLong(networkKey + TIME_SUFFIX, 0);
+        long defaultEstimate = DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE;
+        if (estimate <= 0 || ageMs < 0 || ageMs > MAX_AGE_MS) {
+            return defaultEstimate;
+        }
+        double weight = Math.pow(0.5, (double) ageMs / HALF_LIFE_MS);
+        return defaultEstimate + (long) ((estimate - defaultEstimate) * weight);
+    }
+
+    /**
+     * Stores the latest estimate of the meter for the network. Writes are throttled, the meter
+     * already smooths its samples so only the latest one matters.
+     */
+    void record(String networkKey, long bitrateEstimate) {
+        if (NO_NETWORK.equals(networkKey) || bitrateEstimate <= 0) {
+            return;
+        }
+        long nowMs = SystemClock.elapsedRealtime();
+        if (networkKey.equals(mLastWrittenKey)
+                && nowMs - mLastWriteRealtimeMs < MIN_WRITE_INTERVAL_MS) {
+            return;
+        }
+        mLastWrittenKey = networkKey;
+        mLastWriteRealtimeMs = nowMs;
+        mPreferences.edit()
+                .putLong(networkKey + ESTIMATE_SUFFIX, bitrateEstimate)
+                .putLong(networkKey + TIME_SUFFIX, System.currentTimeMillis())
+                .apply();
+    }
+}
@@ -0,0 +1,74 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+
+/**
+ * Named buffering configurations for the player's {@link LoadControl}.
+ */
+public enum BufferProfile {
+
+    LOW_MEMORY(5000, 15000, 1500, 3000, 4 * 1024 * 1024, false),
+    BALANCED(15000, 50000, 2500, 5000, 16 * 1024 * 1024, true),
+    FAST_START(10000, 40000, 500, 2000, 24 * 1024 * 1024, true);
+
+    private static final String LOG_TAG = BufferProfile.class.getSimpleName();
+    private static final int LOW_MEMORY_CLASS_MB = 128;
+
+    public final int minBufferMs;
+    public final int maxBufferMs;
+    public final int bufferForPlaybackMs;
+    public final int bufferForPlaybackAfterRebufferMs;
+    public final int targetBufferBytes;
+    public final boolean prioritizeTimeOverSizeThresholds;
+
+    BufferProfile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                  int bufferForPlaybackAfterRebufferMs, int targetBufferBytes,
+                  boolean prioritizeTimeOverSizeThresholds) {
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.targetBufferBytes = targetBufferBytes;
+        this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+    }
+
+    public LoadControl createLoadControl() {
+        return new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(minBufferMs, maxBufferMs, bufferForPlaybackMs,
+                        bufferForPlaybackAfterRebufferMs)
+                .setTargetBufferBytes(targetBufferBytes)
+                .setPrioritizeTimeOverSizeThresholds(prioritizeTimeOverSizeThresholds)
+                .createDefaultLoadControl();
+    }
+
+    /**
+     * Picks a profile for this device: low memory devices get {@link #LOW_MEMORY}, devices
+     * on an unmetered connection get {@link #FAST_START} and everything else {@link #BALANCED}.
+     */
+    public static BufferProfile select(Context context) {
+        BufferProfile profile = BALANCED;
+        ActivityManager activityManager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (activityManager != null && (activityManager.isLowRamDevice()
+                || activityManager.getMemoryClass() <= LOW_MEMORY_CLASS_MB)) {
+            profile = LOW_MEMORY;
+        } else if (connectivityManager != null) {
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            if (networkInfo != null && networkInfo.isConnected()
+                    && !connectivityManager.isActiveNetworkMetered()) {
+                profile = FAST_START;
+            }
+        }
+        Log.d(LOG_TAG, "Selected buffer profile " + profile);
+        return profile;
+    }
+}
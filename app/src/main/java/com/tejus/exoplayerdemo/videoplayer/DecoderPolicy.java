@@ -0,0 +1,180 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the decoders the players use. Hardware decoders are tried before software ones,
+ * software decoders can be ruled out altogether, and decoders can be blacklisted by name.
+ * A decoder that failed to initialise during playback is skipped for a minute, so the retried
+ * prepare falls back to the next candidate while a passing failure, e.g. another app holding
+ * the codec, doesn't rule it out for good. Thread safe, the players query it from their
+ * playback threads.
+ */
+public class DecoderPolicy implements MediaCodecSelector {
+
+    private static final String LOG_TAG = DecoderPolicy.class.getSimpleName();
+    private static final Object LOCK = new Object();
+    private static final int PREWARM_WIDTH = 1280;
+    private static final int PREWARM_HEIGHT = 720;
+    private static final long FAILURE_TIMEOUT_MS = 60000;
+
+    private static volatile DecoderPolicy sInstance;
+
+    private final Set<String> mBlacklist = new HashSet<>();
+    private final Map<String, Long> mFailedUntilMs = new HashMap<>();
+    private volatile boolean mPreferHardware = true;
+    private volatile boolean mAllowSoftware = true;
+
+    private DecoderPolicy() {
+    }
+
+    public static DecoderPolicy getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new DecoderPolicy();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public void setPreferHardware(boolean preferHardware) {
+        mPreferHardware = preferHardware;
+    }
+
+    /**
+     * Whether software decoders may be used at all, e.g. when no hardware decoder is left.
+     */
+    public void setAllowSoftware(boolean allowSoftware) {
+        mAllowSoftware = allowSoftware;
+    }
+
+    public synchronized void blacklist(String decoderName) {
+        mBlacklist.add(decoderName);
+    }
+
+    /**
+     * Skips the given decoder for a while because it failed to initialise.
+     */
+    synchronized void reportInitFailure(String decoderName) {
+        Log.w(LOG_TAG, "Decoder " + decoderName + " failed to initialise, falling back");
+        mFailedUntilMs.put(decoderName, SystemClock.elapsedRealtime() + FAILURE_TIMEOUT_MS);
+    }
+
+    private boolean hasFailedRecently(String decoderName, long nowMs) {
+        Long failedUntilMs = mFailedUntilMs.get(decoderName);
+        if (failedUntilMs == null) {
+            return false;
+        }
+        if (nowMs >= failedUntilMs) {
+            mFailedUntilMs.remove(decoderName);
+            return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public MediaCodecInfo getDecoderInfo(String mimeType, boolean requiresSecureDecoder)
+            throws MediaCodecUtil.DecoderQueryException {
+        List<MediaCodecInfo> candidates = getCandidates(mimeType, requiresSecureDecoder);
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    @Nullable
+    @Override
+    public MediaCodecInfo getPassthroughDecoderInfo() throws MediaCodecUtil.DecoderQueryException {
+        return MediaCodecUtil.getPassthroughDecoderInfo();
+    }
+
+    /**
+     * Returns the usable decoders for mimeType, best first.
+     */
+    List<MediaCodecInfo> getCandidates(String mimeType, boolean requiresSecureDecoder)
+            throws MediaCodecUtil.DecoderQueryException {
+        List<MediaCodecInfo> infos =
+                MediaCodecUtil.getDecoderInfos(mimeType, requiresSecureDecoder);
+        List<MediaCodecInfo> hardware = new ArrayList<>();
+        List<MediaCodecInfo> software = new ArrayList<>();
+        long nowMs = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            for (MediaCodecInfo info : infos) {
+                if (mBlacklist.contains(info.name) || hasFailedRecently(info.name, nowMs)) {
+                    continue;
+                }
+                (isSoftware(info.name) ? software : hardware).add(info);
+            }
+        }
+        if (!mAllowSoftware) {
+            return hardware;
+        }
+        List<MediaCodecInfo> candidates = new ArrayList<>(hardware.size() + software.size());
+        candidates.addAll(mPreferHardware ? hardware : software);
+        candidates.addAll(mPreferHardware ? software : hardware);
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Creates, configures and starts the decoder that would be picked for mimeType, then
+     * releases it again. This loads the codec component and its libraries ahead of the first
+     * play; the time it took is recorded with the decoder init times in
+     * {@link PlaybackMetrics}. A failure here is only logged: the prewarm format is a guess, so
+     * it says nothing about the streams the decoder will actually be given.
+     */
+    void prewarm(String mimeType) {
+        MediaCodecInfo info;
+        try {
+            info = getDecoderInfo(mimeType, false);
+        } catch (MediaCodecUtil.DecoderQueryException e) {
+            Log.e(LOG_TAG, "Exception caught in prewarm: " + e.getMessage());
+            return;
+        }
+        if (info == null) {
+            return;
+        }
+        MediaFormat format = MimeTypes.isVideo(mimeType)
+                ? MediaFormat.createVideoFormat(mimeType, PREWARM_WIDTH, PREWARM_HEIGHT)
+                : MediaFormat.createAudioFormat(mimeType, 44100, 2);
+        long startMs = SystemClock.elapsedRealtime();
+        MediaCodec codec = null;
+        try {
+            codec = MediaCodec.createByCodecName(info.name);
+            codec.configure(format, null, null, 0);
+            codec.start();
+            long initMs = SystemClock.elapsedRealtime() - startMs;
+            Log.d(LOG_TAG, "Prewarmed " + info.name + " in " + initMs + "ms");
+            PlaybackMetrics.getInstance().recordDecoderInit("prewarm:" + info.name, initMs);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Exception caught in prewarm: " + e.getMessage());
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+        }
+    }
+
+    private static boolean isSoftware(String name) {
+        return name.startsWith("OMX.google.") || name.startsWith("c2.android.")
+                || name.startsWith("c2.google.")
+                || (!name.startsWith("OMX.") && !name.startsWith("c2."));
+    }
+}
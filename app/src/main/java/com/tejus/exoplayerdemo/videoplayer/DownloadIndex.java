@@ -0,0 +1,126 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.util.Log;
+
+import com.google.android.exoplayer2.util.AtomicFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small on-disk index of pinned videos and how far their download got. The whole index is
+ * rewritten atomically on every save, which is fine for the handful of entries it holds.
+ */
+class DownloadIndex {
+
+    private static final String LOG_TAG = DownloadIndex.class.getSimpleName();
+    private static final int VERSION = 1;
+
+    static final int STATE_QUEUED = 0;
+    static final int STATE_DOWNLOADING = 1;
+    static final int STATE_COMPLETED = 2;
+    static final int STATE_FAILED = 3;
+    static final int STATE_QUOTA_EXCEEDED = 4;
+
+    static class Entry {
+        final String url;
+        int state;
+        long downloadedBytes;
+        float percentage;
+
+        Entry(String url, int state, long downloadedBytes, float percentage) {
+            this.url = url;
+            this.state = state;
+            this.downloadedBytes = downloadedBytes;
+            this.percentage = percentage;
+        }
+    }
+
+    private final AtomicFile mFile;
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    DownloadIndex(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Reads the index from disk. Entries put before loading finished take precedence.
+     */
+    synchronized void load() {
+        try (InputStream inputStream = mFile.openRead()) {
+            DataInputStream input = new DataInputStream(inputStream);
+            if (input.readInt() != VERSION) {
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(input.readUTF(), input.readInt(), input.readLong(),
+                        input.readFloat());
+                if (!mEntries.containsKey(entry.url)) {
+                    mEntries.put(entry.url, entry);
+                }
+            }
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "No download index loaded: " + e.getMessage());
+        }
+    }
+
+    synchronized void save() {
+        OutputStream outputStream = null;
+        try {
+            outputStream = mFile.startWrite();
+            DataOutputStream output = new DataOutputStream(outputStream);
+            output.writeInt(VERSION);
+            output.writeInt(mEntries.size());
+            for (Entry entry : mEntries.values()) {
+                output.writeUTF(entry.url);
+                output.writeInt(entry.state);
+                output.writeLong(entry.downloadedBytes);
+                output.writeFloat(entry.percentage);
+            }
+            output.flush();
+            mFile.endWrite(outputStream);
+            outputStream = null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Exception caught in save: " + e.getMessage());
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    synchronized Entry get(String url) {
+        return mEntries.get(url);
+    }
+
+    synchronized void put(String url, int state, long downloadedBytes, float percentage) {
+        Entry entry = mEntries.get(url);
+        if (entry == null) {
+            mEntries.put(url, new Entry(url, state, downloadedBytes, percentage));
+        } else {
+            entry.state = state;
+            entry.downloadedBytes = downloadedBytes;
+            entry.percentage = percentage;
+        }
+    }
+
+    synchronized void remove(String url) {
+        mEntries.remove(url);
+    }
+
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries.values());
+    }
+}
@@ -0,0 +1,79 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+
+/**
+ * Wraps a {@link LoadControl} and stops loading once the player holds more bytes than the
+ * current {@link NetworkGovernor.Mode} allows. The cap is read on every call, so a mode
+ * change applies to a running player. Loading always continues while less than minBufferMs
+ * is buffered, so the cap can't stall playback.
+ */
+class GovernedLoadControl implements LoadControl {
+
+    private final LoadControl mDelegate;
+    private final NetworkGovernor mNetworkGovernor;
+    private final long mMinBufferUs;
+
+    GovernedLoadControl(LoadControl delegate, NetworkGovernor networkGovernor, int minBufferMs) {
+        mDelegate = delegate;
+        mNetworkGovernor = networkGovernor;
+        mMinBufferUs = C.msToUs(minBufferMs);
+    }
+
+    @Override
+    public void onPrepared() {
+        mDelegate.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups,
+                                 TrackSelectionArray trackSelections) {
+        mDelegate.onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped() {
+        mDelegate.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        mDelegate.onReleased();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return mDelegate.getAllocator();
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return mDelegate.getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return mDelegate.retainBackBufferFromKeyframe();
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+        long maxBufferBytes = mNetworkGovernor.getMode().maxBufferBytes;
+        if (maxBufferBytes != C.LENGTH_UNSET && bufferedDurationUs >= mMinBufferUs
+                && getAllocator().getTotalBytesAllocated() >= maxBufferBytes) {
+            return false;
+        }
+        return mDelegate.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed,
+                                       boolean rebuffering) {
+        return mDelegate.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering);
+    }
+}
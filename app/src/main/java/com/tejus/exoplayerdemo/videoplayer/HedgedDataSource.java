@@ -0,0 +1,377 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSourceException;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Reads a url from the healthiest of its {@link Origins}. If the response of the first origin
+ * hasn't arrived within the hedge delay, the next origin is requested as well; the first good
+ * response wins and the other calls are cancelled. When an origin fails, at open or
+ * mid-stream, the read resumes from the next origin at the same byte offset. With no mirrors
+ * registered this is a plain OkHttp data source.
+ */
+class HedgedDataSource extends BaseDataSource {
+
+    private static final String LOG_TAG = HedgedDataSource.class.getSimpleName();
+    private static final int MAX_FAILOVERS = 3;
+
+    private final OkHttpClient mClient;
+    private final String mUserAgent;
+    private final long mHedgeDelayMs;
+    private final Origins mOrigins;
+
+    private DataSpec mDataSpec;
+    private Response mResponse;
+    private InputStream mInputStream;
+    private String mOrigin;
+    private long mBytesToRead;
+    private long mBytesRead;
+    private int mFailovers;
+    private boolean mOpened;
+
+    HedgedDataSource(OkHttpClient client, String userAgent, long hedgeDelayMs, Origins origins) {
+        super(true);
+        mClient = client;
+        mUserAgent = userAgent;
+        mHedgeDelayMs = hedgeDelayMs;
+        mOrigins = origins;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        mDataSpec = dataSpec;
+        mBytesRead = 0;
+        mFailovers = 0;
+        transferInitializing(dataSpec);
+        long available = race(mOrigins.getOrigins(dataSpec.uri.toString()),
+                dataSpec.position, dataSpec.length);
+        mBytesToRead = dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : available;
+        mOpened = true;
+        transferStarted(dataSpec);
+        return mBytesToRead;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (mBytesToRead != C.LENGTH_UNSET) {
+            long remaining = mBytesToRead - mBytesRead;
+            if (remaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            readLength = (int) Math.min(readLength, remaining);
+        }
+        while (true) {
+            IOException error;
+            try {
+                int read = mInputStream.read(buffer, offset, readLength);
+                if (read > 0) {
+                    mBytesRead += read;
+                    bytesTransferred(read);
+                    return read;
+                }
+                if (mBytesToRead == C.LENGTH_UNSET) {
+                    return C.RESULT_END_OF_INPUT;
+                }
+                error = new EOFException("Response from " + mOrigin + " ended early");
+            } catch (InterruptedIOException e) {
+                // A read timeout is a stalled origin, only a real interruption stops the read.
+                if (!(e instanceof SocketTimeoutException)
+                        || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                error = e;
+            } catch (IOException e) {
+                error = e;
+            }
+            failOver(error);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return mOrigin == null ? null : Uri.parse(mOrigin);
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return mResponse == null
+                ? Collections.emptyMap() : mResponse.headers().toMultimap();
+    }
+
+    @Override
+    public void close() {
+        closeResponse();
+        if (mOpened) {
+            mOpened = false;
+            transferEnded();
+        }
+    }
+
+    /**
+     * Continues the read from another origin after the current one failed.
+     */
+    private void failOver(IOException error) throws IOException {
+        String failedOrigin = mOrigin;
+        mOrigins.recordFailure(failedOrigin);
+        closeResponse();
+        List<String> origins = mOrigins.getOrigins(mDataSpec.uri.toString());
+        origins.remove(failedOrigin);
+        if (origins.isEmpty() || mFailovers >= MAX_FAILOVERS) {
+            throw error;
+        }
+        mFailovers++;
+        Log.w(LOG_TAG, "Read from " + failedOrigin + " failed after " + mBytesRead
+                + " bytes, failing over: " + error.getMessage());
+        long length = mBytesToRead == C.LENGTH_UNSET
+                ? C.LENGTH_UNSET : mBytesToRead - mBytesRead;
+        race(origins, mDataSpec.position + mBytesRead, length);
+    }
+
+    /**
+     * Requests the range from the origins in order, hedging to the next one whenever no
+     * response arrived within the hedge delay and moving on at once when one fails. Keeps
+     * the first good response and returns the bytes it has from position, or
+     * {@link C#LENGTH_UNSET}.
+     */
+    private long race(List<String> origins, long position, long length) throws IOException {
+        Race race = new Race(position, length);
+        Attempt winner = null;
+        int next = 0;
+        int pending = 0;
+        IOException lastError = null;
+        try {
+            while (true) {
+                if (pending == 0) {
+                    if (next == origins.size()) {
+                        throw lastError;
+                    }
+                    race.start(origins.get(next++));
+                    pending++;
+                }
+                Attempt attempt = next < origins.size() ? race.poll(mHedgeDelayMs) : race.take();
+                if (attempt == null) {
+                    Log.d(LOG_TAG, "No response within " + mHedgeDelayMs + "ms, hedging to "
+                            + origins.get(next));
+                    race.start(origins.get(next++));
+                    pending++;
+                    continue;
+                }
+                pending--;
+                try {
+                    long available = accept(attempt, position, length);
+                    mOrigins.recordFirstByte(attempt.url, attempt.firstByteMs);
+                    winner = attempt;
+                    return available;
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Request to " + attempt.url + " failed: " + e.getMessage());
+                    mOrigins.recordFailure(attempt.url);
+                    lastError = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening " + mDataSpec.uri);
+        } finally {
+            race.settle(winner);
+        }
+    }
+
+    private long accept(Attempt attempt, long position, long length) throws IOException {
+        if (attempt.error != null) {
+            throw attempt.error;
+        }
+        Response response = attempt.response;
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            response.close();
+            HttpDataSource.InvalidResponseCodeException exception =
+                    new HttpDataSource.InvalidResponseCodeException(response.code(),
+                            response.headers().toMultimap(), mDataSpec);
+            if (response.code() == 416) {
+                exception.initCause(
+                        new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE));
+            }
+            throw exception;
+        }
+        InputStream inputStream = body.byteStream();
+        long available = body.contentLength();
+        if (response.code() != 206 && position > 0) {
+            // The origin ignored the range, skip up to the requested position.
+            long skipped = 0;
+            while (skipped < position) {
+                long count = inputStream.skip(position - skipped);
+                if (count <= 0) {
+                    response.close();
+                    throw new EOFException("Unable to skip to " + position + " in " + attempt.url);
+                }
+                skipped += count;
+            }
+            available = available < 0 ? C.LENGTH_UNSET : available - position;
+        }
+        if (length != C.LENGTH_UNSET && available != C.LENGTH_UNSET && available < length) {
+            // A mirror serving a different file, resuming from it would corrupt the read.
+            response.close();
+            throw new EOFException("Only " + available + " of " + length + " bytes at "
+                    + attempt.url);
+        }
+        mResponse = response;
+        mInputStream = inputStream;
+        mOrigin = attempt.url;
+        return available < 0 ? C.LENGTH_UNSET : available;
+    }
+
+    private void closeResponse() {
+        if (mResponse != null) {
+            mResponse.close();
+            mResponse = null;
+            mInputStream = null;
+        }
+    }
+
+    /**
+     * The calls made for one range. Responses that arrive once it is settled are closed.
+     */
+    private class Race {
+
+        private final long mPosition;
+        private final long mLength;
+        private final BlockingQueue<Attempt> mDone = new LinkedBlockingQueue<>();
+        private final List<Attempt> mAttempts = new ArrayList<>();
+        private boolean mSettled;
+
+        Race(long position, long length) {
+            mPosition = position;
+            mLength = length;
+        }
+
+        void start(String url) {
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .header("User-Agent", mUserAgent)
+                    // Offsets are in raw bytes, so the body must not be compressed.
+                    .header("Accept-Encoding", "identity");
+            if (mPosition != 0 || mLength != C.LENGTH_UNSET) {
+                String range = "bytes=" + mPosition + "-";
+                if (mLength != C.LENGTH_UNSET) {
+                    range += mPosition + mLength - 1;
+                }
+                builder.header("Range", range);
+            }
+            Attempt attempt = new Attempt(this, url, mClient.newCall(builder.build()));
+            mAttempts.add(attempt);
+            attempt.call.enqueue(attempt);
+        }
+
+        @Nullable
+        Attempt poll(long timeoutMs) throws InterruptedException {
+            return mDone.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        Attempt take() throws InterruptedException {
+            return mDone.take();
+        }
+
+        synchronized void complete(Attempt attempt) {
+            if (mSettled) {
+                attempt.closeResponse();
+            } else {
+                mDone.add(attempt);
+            }
+        }
+
+        /**
+         * Cancels every call but the winner's. Losers still waiting count as slow as they
+         * were, so an origin that keeps losing gets demoted.
+         */
+        void settle(@Nullable Attempt winner) {
+            synchronized (this) {
+                mSettled = true;
+            }
+            for (Attempt attempt : mAttempts) {
+                if (attempt == winner) {
+                    continue;
+                }
+                if (winner != null && attempt.response == null && attempt.error == null) {
+                    mOrigins.recordFirstByte(attempt.url,
+                            SystemClock.elapsedRealtime() - attempt.startMs);
+                }
+                attempt.call.cancel();
+            }
+            Attempt attempt;
+            while ((attempt = mDone.poll()) != null) {
+                if (attempt != winner) {
+                    attempt.closeResponse();
+                }
+            }
+        }
+    }
+
+    private static class Attempt implements Callback {
+
+        final Race race;
+        final String url;
+        final Call call;
+        final long startMs = SystemClock.elapsedRealtime();
+        volatile Response response;
+        volatile IOException error;
+        volatile long firstByteMs;
+
+        Attempt(Race race, String url, Call call) {
+            this.race = race;
+            this.url = url;
+            this.call = call;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            firstByteMs = SystemClock.elapsedRealtime() - startMs;
+            error = e;
+            race.complete(this);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            firstByteMs = SystemClock.elapsedRealtime() - startMs;
+            this.response = response;
+            race.complete(this);
+        }
+
+        void closeResponse() {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+}
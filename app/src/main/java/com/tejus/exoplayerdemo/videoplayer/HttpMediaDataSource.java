@@ -0,0 +1,146 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.media.MediaDataSource;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Lets MediaMetadataRetriever read a remote file through the shared {@link HttpStack}.
+ * Sequential reads stream from one response; a read at another offset issues a range
+ * request on a pooled connection. Requests fail over to the mirrors in {@link Origins}.
+ */
+public class HttpMediaDataSource extends MediaDataSource {
+
+    private static final String LOG_TAG = HttpMediaDataSource.class.getSimpleName();
+
+    private final OkHttpClient mClient;
+    private final String mUrl;
+    private final String mUserAgent;
+    private final Origins mOrigins;
+    private long mSize = -1;
+    private Response mResponse;
+    private InputStream mInputStream;
+    private String mOrigin;
+    private long mStreamPosition;
+
+    public HttpMediaDataSource(HttpStack httpStack, String url) {
+        mClient = httpStack.getClient();
+        mUserAgent = httpStack.getUserAgent();
+        mOrigins = Origins.getInstance();
+        mUrl = url;
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size)
+            throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        if (mSize >= 0 && position >= mSize) {
+            return -1;
+        }
+        if (mInputStream == null || position != mStreamPosition) {
+            open(position);
+        }
+        int read;
+        try {
+            read = mInputStream.read(buffer, offset, size);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Read from " + mOrigin + " failed, reopening: " + e.getMessage());
+            mOrigins.recordFailure(mOrigin);
+            open(position);
+            read = mInputStream.read(buffer, offset, size);
+        }
+        if (read > 0) {
+            mStreamPosition += read;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        if (mSize < 0) {
+            open(0);
+        }
+        return mSize;
+    }
+
+    private void open(long position) throws IOException {
+        closeResponse();
+        IOException lastError = null;
+        for (String origin : mOrigins.getOrigins(mUrl)) {
+            try {
+                open(origin, position);
+                return;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Request to " + origin + " failed: " + e.getMessage());
+                mOrigins.recordFailure(origin);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    private void open(String origin, long position) throws IOException {
+        long startMs = SystemClock.elapsedRealtime();
+        Request request = new Request.Builder()
+                .url(origin)
+                .header("User-Agent", mUserAgent)
+                .header("Range", "bytes=" + position + "-")
+                .build();
+        mResponse = mClient.newCall(request).execute();
+        ResponseBody body = mResponse.body();
+        if (!mResponse.isSuccessful() || body == null) {
+            int code = mResponse.code();
+            closeResponse();
+            throw new IOException("Unexpected response " + code + " for " + origin);
+        }
+        mOrigins.recordFirstByte(origin, SystemClock.elapsedRealtime() - startMs);
+        mOrigin = origin;
+        mInputStream = body.byteStream();
+        mStreamPosition = position;
+        if (mResponse.code() == 206) {
+            String contentRange = mResponse.header("Content-Range");
+            if (contentRange != null && contentRange.lastIndexOf('/') >= 0) {
+                String total = contentRange.substring(contentRange.lastIndexOf('/') + 1);
+                if (!"*".equals(total)) {
+                    mSize = Long.parseLong(total);
+                }
+            }
+        } else {
+            // The server ignored the range, skip up to the requested position.
+            mSize = body.contentLength();
+            long skipped = 0;
+            while (skipped < position) {
+                long count = mInputStream.skip(position - skipped);
+                if (count <= 0) {
+                    closeResponse();
+                    throw new IOException("Unable to skip to " + position + " in " + origin);
+                }
+                skipped += count;
+            }
+        }
+        Log.d(LOG_TAG, "Opened " + origin + " at " + position + ", size " + mSize);
+    }
+
+    private void closeResponse() {
+        if (mResponse != null) {
+            mResponse.close();
+            mResponse = null;
+            mInputStream = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeResponse();
+    }
+}
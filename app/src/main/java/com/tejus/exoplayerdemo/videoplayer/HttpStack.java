@@ -0,0 +1,198 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.util.Util;
+import com.tejus.exoplayerdemo.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The HTTP client shared by the player and the preview path. All requests go through one
+ * OkHttp connection pool, so seeks, re-prepares and frame extraction reuse warm keep-alive
+ * or HTTP/2 connections instead of paying for a new TCP and TLS handshake each time.
+ * Media reads are hedged across the mirrors registered with {@link Origins}.
+ */
+public class HttpStack {
+
+    private static final String LOG_TAG = HttpStack.class.getSimpleName();
+    private static final String USER_AGENT_APP_NAME = "ExoPlayerDemo";
+
+    private static final Object LOCK = new Object();
+    private static volatile HttpStack sInstance;
+    private static Config sConfig = new Config();
+
+    private final OkHttpClient mClient;
+    private final String mUserAgent;
+    private final long mHedgeDelayMs;
+    private final Histogram mConnectMs = new Histogram();
+    private final Histogram mFirstByteMs = new Histogram();
+    private final Histogram mCallMs = new Histogram();
+    private final AtomicLong mCalls = new AtomicLong();
+    private final AtomicLong mReusedConnections = new AtomicLong();
+    private final AtomicLong mFailedCalls = new AtomicLong();
+
+    public static class Config {
+        public long connectTimeoutMs = 8000;
+        public long readTimeoutMs = 8000;
+        public int maxIdleConnections = 5;
+        public long keepAliveMs = TimeUnit.MINUTES.toMillis(5);
+        /**
+         * How long to wait for a response before also requesting the next mirror.
+         */
+        public long hedgeDelayMs = 500;
+    }
+
+    public HttpStack(String userAgent, Config config) {
+        mUserAgent = userAgent;
+        mHedgeDelayMs = config.hedgeDelayMs;
+        mClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(config.maxIdleConnections,
+                        config.keepAliveMs, TimeUnit.MILLISECONDS))
+                .connectTimeout(config.connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(config.readTimeoutMs, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(call -> new TimingListener())
+                .build();
+    }
+
+    public static HttpStack getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new HttpStack(
+                            Util.getUserAgent(context, USER_AGENT_APP_NAME), sConfig);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Replaces the configuration used by {@link #getInstance(Context)}. Only takes effect if
+     * called before the shared instance is first created.
+     */
+    public static void setConfig(Config config) {
+        synchronized (LOCK) {
+            if (sInstance != null) {
+                Log.w(LOG_TAG, "HTTP stack already created, ignoring new config");
+                return;
+            }
+            sConfig = config;
+        }
+    }
+
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    public String getUserAgent() {
+        return mUserAgent;
+    }
+
+    public DataSource.Factory getDataSourceFactory() {
+        return () -> new HedgedDataSource(mClient, mUserAgent, mHedgeDelayMs,
+                Origins.getInstance());
+    }
+
+    public Timings getTimings() {
+        return new Timings(mCalls.get(), mReusedConnections.get(), mFailedCalls.get(),
+                mConnectMs.snapshot(), mFirstByteMs.snapshot(), mCallMs.snapshot());
+    }
+
+    public static class Timings {
+
+        public final long calls;
+        public final long reusedConnections;
+        public final long failedCalls;
+        public final Histogram.Snapshot connectMs;
+        public final Histogram.Snapshot firstByteMs;
+        public final Histogram.Snapshot callMs;
+
+        Timings(long calls, long reusedConnections, long failedCalls, Histogram.Snapshot connectMs,
+                Histogram.Snapshot firstByteMs, Histogram.Snapshot callMs) {
+            this.calls = calls;
+            this.reusedConnections = reusedConnections;
+            this.failedCalls = failedCalls;
+            this.connectMs = connectMs;
+            this.firstByteMs = firstByteMs;
+            this.callMs = callMs;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + calls + " reused=" + reusedConnections + " failed=" + failedCalls
+                    + "\n connectMs: " + connectMs
+                    + "\n firstByteMs: " + firstByteMs
+                    + "\n callMs: " + callMs;
+        }
+    }
+
+    /**
+     * Times a single call. OkHttp creates one listener per call.
+     */
+    private class TimingListener extends EventListener {
+
+        private long mCallStartNs;
+        private long mConnectStartNs;
+        private boolean mConnected;
+
+        @Override
+        public void callStart(Call call) {
+            mCallStartNs = System.nanoTime();
+            mCalls.incrementAndGet();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            mConnectStartNs = System.nanoTime();
+            mConnected = true;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                               Protocol protocol) {
+            mConnectMs.record(elapsedMs(mConnectStartNs));
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (!mConnected) {
+                mReusedConnections.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            mFirstByteMs.record(elapsedMs(mCallStartNs));
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            mCallMs.record(elapsedMs(mCallStartNs));
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            mFailedCalls.incrementAndGet();
+            mCallMs.record(elapsedMs(mCallStartNs));
+        }
+
+        private long elapsedMs(long startNs) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide, size bounded disk cache for media bytes. Reads are served from the cache
+ * first and only fall through to the network for spans that are not cached yet.
+ */
+public class MediaCache {
+
+    private static final String LOG_TAG = MediaCache.class.getSimpleName();
+    private static final String CACHE_DIR = "media";
+    private static final long DEFAULT_MAX_BYTES = 100 * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    private static volatile MediaCache sInstance;
+    private static long sMaxBytes = DEFAULT_MAX_BYTES;
+
+    private final SimpleCache mCache;
+    private final DataSource.Factory mUpstreamFactory;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    private MediaCache(Context context, long maxBytes) {
+        File cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        mCache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(maxBytes));
+        mUpstreamFactory = HttpStack.getInstance(context).getDataSourceFactory();
+        Log.d(LOG_TAG, "Media cache created with a cap of " + maxBytes + " bytes");
+    }
+
+    public static MediaCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new MediaCache(context.getApplicationContext(), sMaxBytes);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the size cap of the cache. Only takes effect if called before the first call
+     * to {@link #getInstance(Context)}.
+     */
+    public static void setMaxBytes(long maxBytes) {
+        synchronized (LOCK) {
+            if (sInstance != null) {
+                Log.w(LOG_TAG, "Media cache already created, ignoring new cap of " + maxBytes);
+                return;
+            }
+            sMaxBytes = maxBytes;
+        }
+    }
+
+    public DataSource.Factory getDataSourceFactory() {
+        return CountingDataSource::new;
+    }
+
+    public DataSource.Factory getUpstreamFactory() {
+        return mUpstreamFactory;
+    }
+
+    public SimpleCache getCache() {
+        return mCache;
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    public long getCacheSpace() {
+        return mCache.getCacheSpace();
+    }
+
+    /**
+     * Counts an open as a hit if any of its bytes came from the cache, and as a miss otherwise.
+     * CacheDataSource only reports cached reads when it is closed, so the decision is made there.
+     */
+    private class CountingDataSource implements DataSource, CacheDataSource.EventListener {
+
+        private final CacheDataSource mDataSource;
+        private long mBytesFromCache;
+        private boolean mOpened;
+
+        CountingDataSource() {
+            mDataSource = new CacheDataSource(mCache,
+                    mUpstreamFactory.createDataSource(),
+                    new FileDataSourceFactory().createDataSource(),
+                    new CacheDataSinkFactory(mCache, CacheDataSink.DEFAULT_MAX_CACHE_FILE_SIZE)
+                            .createDataSink(),
+                    CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+                    this);
+        }
+
+        @Override
+        public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+            mBytesFromCache += cachedBytesRead;
+        }
+
+        @Override
+        public void onCacheIgnored(int reason) {
+            Log.d(LOG_TAG, "Cache ignored, reason " + reason);
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            mDataSource.addTransferListener(transferListener);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            mBytesFromCache = 0;
+            mOpened = true;
+            return mDataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            return mDataSource.read(buffer, offset, readLength);
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return mDataSource.getUri();
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return mDataSource.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mDataSource.close();
+            } finally {
+                if (mOpened) {
+                    if (mBytesFromCache > 0) {
+                        mHits.incrementAndGet();
+                        mBytesSaved.addAndGet(mBytesFromCache);
+                    } else {
+                        mMisses.incrementAndGet();
+                    }
+                    mOpened = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Intent;
+
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.scheduler.PlatformScheduler;
+import com.google.android.exoplayer2.scheduler.Requirements;
+import com.google.android.exoplayer2.scheduler.Scheduler;
+import com.google.android.exoplayer2.ui.DownloadNotificationUtil;
+import com.tejus.exoplayerdemo.MainActivity;
+import com.tejus.exoplayerdemo.R;
+
+/**
+ * Foreground service that keeps downloads started through {@link OfflineManager} running
+ * while the app is in the background. Pending downloads are resumed by a scheduled job once
+ * there is a network again, also after the process died.
+ */
+public class MediaDownloadService extends DownloadService {
+
+    private static final String NOTIFICATION_CHANNEL_ID = "Downloads";
+    private static final int NOTIFICATION_ID = 1;
+    private static final int JOB_ID = 1;
+
+    public MediaDownloadService() {
+        super(NOTIFICATION_ID, DEFAULT_FOREGROUND_NOTIFICATION_UPDATE_INTERVAL,
+                NOTIFICATION_CHANNEL_ID, R.string.download_channel_name);
+    }
+
+    @Override
+    protected DownloadManager getDownloadManager() {
+        return OfflineManager.getInstance(this).getDownloadManager();
+    }
+
+    @Override
+    protected Scheduler getScheduler() {
+        return new PlatformScheduler(this, JOB_ID);
+    }
+
+    @Override
+    protected Requirements getRequirements() {
+        return new Requirements(Requirements.NETWORK_TYPE_ANY, false, false);
+    }
+
+    @Override
+    protected Notification getForegroundNotification(DownloadManager.TaskState[] taskStates) {
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), 0);
+        return DownloadNotificationUtil.buildProgressNotification(this,
+                R.drawable.exo_icon_play, NOTIFICATION_CHANNEL_ID, contentIntent, null,
+                taskStates);
+    }
+}
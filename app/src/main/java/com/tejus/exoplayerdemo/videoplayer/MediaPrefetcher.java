@@ -0,0 +1,178 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.tejus.exoplayerdemo.AppExecutors;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Speculatively loads the start of a video into the {@link MediaCache} while its preview is
+ * on screen, so that a PlayerInstance started afterwards finds the first seconds on disk.
+ * Loading stops once either the byte budget or the time budget is used up. Nothing is
+ * prefetched while the {@link NetworkGovernor} mode disallows it.
+ */
+public class MediaPrefetcher {
+
+    private static final String LOG_TAG = MediaPrefetcher.class.getSimpleName();
+    public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+    public static final long DEFAULT_MAX_DURATION_MS = 10000;
+
+    private final Context mContext;
+    private final Executor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mMaxDurationMs = DEFAULT_MAX_DURATION_MS;
+    private Task mTask;
+
+    public MediaPrefetcher(Context context, Executor executor) {
+        // The cache is opened on the executor, it reads its index from disk.
+        mContext = context.getApplicationContext();
+        mExecutor = executor;
+    }
+
+    public void setBudget(long maxBytes, long maxDurationMs) {
+        mMaxBytes = maxBytes;
+        mMaxDurationMs = maxDurationMs;
+    }
+
+    public void start(String uri) {
+        if (mTask != null && mTask.mUri.equals(uri)) {
+            return;
+        }
+        cancel();
+        NetworkGovernor networkGovernor = NetworkGovernor.getInstance(mContext);
+        if (!networkGovernor.getMode().prefetch) {
+            Log.d(LOG_TAG, "Not prefetching in " + networkGovernor.getMode() + " mode");
+            recordSkippedPrefetch(networkGovernor, uri);
+            return;
+        }
+        Log.d(LOG_TAG, "Prefetching " + mMaxBytes + " bytes of " + uri);
+        Task task = new Task(uri, mMaxBytes);
+        try {
+            mExecutor.execute(task::load);
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Exception caught in start: " + e.getMessage());
+            return;
+        }
+        mTask = task;
+        mHandler.postDelayed(task::cancel, mMaxDurationMs);
+    }
+
+    private void recordSkippedPrefetch(NetworkGovernor networkGovernor, String uri) {
+        NetworkGovernor.Mode mode = networkGovernor.getMode();
+        DataSpec dataSpec = new DataSpec(Uri.parse(uri), 0, mMaxBytes, null);
+        try {
+            mExecutor.execute(() -> {
+                CacheUtil.CachingCounters counters = new CacheUtil.CachingCounters();
+                CacheUtil.getCached(dataSpec, MediaCache.getInstance(mContext).getCache(),
+                        counters);
+                long uncachedBytes = dataSpec.length - counters.alreadyCachedBytes;
+                // Not through mHandler, cancel() clears its callbacks.
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        networkGovernor.recordSkippedPrefetch(uri, mode, uncachedBytes));
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Exception caught in recordSkippedPrefetch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops loading but keeps whatever was already written to the cache. Call this right
+     * before the player starts so the two do not compete for the same span.
+     */
+    public void cancel() {
+        if (mTask != null) {
+            mHandler.removeCallbacksAndMessages(null);
+            mTask.cancel();
+            mTask = null;
+        }
+    }
+
+    /**
+     * Stops loading and removes the prefetched bytes from the cache, unless they were
+     * already there before the prefetch started.
+     */
+    public void discard() {
+        if (mTask != null) {
+            Task task = mTask;
+            cancel();
+            task.discard();
+        }
+    }
+
+    private class Task {
+
+        private final String mUri;
+        private final DataSpec mDataSpec;
+        private final AtomicBoolean mCancelled = new AtomicBoolean();
+        private final CacheUtil.CachingCounters mCounters = new CacheUtil.CachingCounters();
+        private boolean mFinished;
+        private boolean mDiscardRequested;
+
+        Task(String uri, long maxBytes) {
+            mUri = uri;
+            mDataSpec = new DataSpec(Uri.parse(uri), 0, maxBytes, null);
+        }
+
+        void load() {
+            if (mCancelled.get()) {
+                finish();
+                return;
+            }
+            try {
+                MediaCache mediaCache = MediaCache.getInstance(mContext);
+                CacheUtil.cache(mDataSpec, mediaCache.getCache(),
+                        mediaCache.getUpstreamFactory().createDataSource(), mCounters, mCancelled);
+                Log.d(LOG_TAG, "Prefetch finished, " + mCounters.newlyCachedBytes
+                        + " new bytes, " + mCounters.alreadyCachedBytes + " already cached");
+            } catch (InterruptedException e) {
+                Log.d(LOG_TAG, "Prefetch cancelled after " + mCounters.newlyCachedBytes + " bytes");
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Exception caught in prefetch: " + e.getMessage());
+            } finally {
+                finish();
+            }
+        }
+
+        private synchronized void finish() {
+            mFinished = true;
+            if (mDiscardRequested) {
+                removeFromCache();
+            }
+        }
+
+        void cancel() {
+            mCancelled.set(true);
+        }
+
+        synchronized void discard() {
+            mDiscardRequested = true;
+            if (mFinished) {
+                try {
+                    mExecutor.execute(this::removeFromCache);
+                } catch (RejectedExecutionException e) {
+                    Log.e(LOG_TAG, "Exception caught in discard: " + e.getMessage());
+                }
+            }
+        }
+
+        private void removeFromCache() {
+            if (mCounters.alreadyCachedBytes == 0 && mCounters.newlyCachedBytes > 0) {
+                Cache cache = MediaCache.getInstance(mContext).getCache();
+                CacheUtil.remove(cache, CacheUtil.getKey(mDataSpec));
+                Log.d(LOG_TAG, "Discarded " + mCounters.newlyCachedBytes + " prefetched bytes");
+            }
+        }
+    }
+}
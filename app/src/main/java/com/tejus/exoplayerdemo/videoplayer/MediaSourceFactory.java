@@ -0,0 +1,50 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.ExtractorMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Picks the media source implementation for a uri: DASH and HLS for adaptive streams and
+ * the extractor based source for progressive files.
+ */
+class MediaSourceFactory {
+
+    private static final String LOG_TAG = MediaSourceFactory.class.getSimpleName();
+
+    private final DataSource.Factory mDataSourceFactory;
+
+    MediaSourceFactory(DataSource.Factory dataSourceFactory) {
+        mDataSourceFactory = dataSourceFactory;
+    }
+
+    /**
+     * @param overrideExtension extension such as "m3u8" or "mpd" used to infer the content
+     *                          type when the uri itself does not reveal it, or null.
+     */
+    MediaSource createMediaSource(Uri uri, @Nullable String overrideExtension) {
+        int type = Util.inferContentType(uri, overrideExtension);
+        Log.d(LOG_TAG, "Content type " + type + " for " + uri);
+        switch (type) {
+            case C.TYPE_DASH:
+                return new DashMediaSource.Factory(
+                        new DefaultDashChunkSource.Factory(mDataSourceFactory), mDataSourceFactory)
+                        .createMediaSource(uri);
+            case C.TYPE_HLS:
+                return new HlsMediaSource.Factory(mDataSourceFactory).createMediaSource(uri);
+            case C.TYPE_OTHER:
+                return new ExtractorMediaSource.Factory(mDataSourceFactory).createMediaSource(uri);
+            default:
+                throw new IllegalArgumentException("Unsupported content type " + type + " for " + uri);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.analytics.DefaultAnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Follows the default network and picks a {@link Mode} for it: metered links get data saver
+ * caps and slow links tighter ones. Players apply the caps live, video tracks through their
+ * track selector and buffered bytes through {@link GovernedLoadControl}, and speculative
+ * prefetching stops while the mode disallows it. Bytes saved are estimated per mode from the
+ * video loads that ran below the best track available and from the uncached part of skipped
+ * prefetches. Loads the buffer cap deferred are not counted, they usually happen later anyway.
+ * Must only be used from the main thread, except {@link #getMode()}.
+ */
+public class NetworkGovernor {
+
+    private static final String LOG_TAG = NetworkGovernor.class.getSimpleName();
+    private static final int LOW_BANDWIDTH_KBPS = 1500;
+
+    public enum Mode {
+
+        UNRESTRICTED(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                C.LENGTH_UNSET, true),
+        DATA_SAVER(1000000, 854, 480, 4 * 1024 * 1024, false),
+        LOW_BANDWIDTH(500000, 640, 360, 2 * 1024 * 1024, false);
+
+        public final int maxVideoBitrate;
+        public final int maxVideoWidth;
+        public final int maxVideoHeight;
+        /**
+         * Cap on the bytes a player keeps buffered, or {@link C#LENGTH_UNSET} for none.
+         */
+        public final long maxBufferBytes;
+        public final boolean prefetch;
+
+        Mode(int maxVideoBitrate, int maxVideoWidth, int maxVideoHeight, long maxBufferBytes,
+             boolean prefetch) {
+            this.maxVideoBitrate = maxVideoBitrate;
+            this.maxVideoWidth = maxVideoWidth;
+            this.maxVideoHeight = maxVideoHeight;
+            this.maxBufferBytes = maxBufferBytes;
+            this.prefetch = prefetch;
+        }
+    }
+
+    public interface Listener {
+        void onModeChanged(Mode mode);
+    }
+
+    private static NetworkGovernor sInstance;
+
+    private final ConnectivityManager mConnectivityManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+    private final Map<Mode, Long> mSavedBytes = new EnumMap<>(Mode.class);
+    private final Set<String> mSkippedPrefetches = new HashSet<>();
+    private volatile Mode mMode = Mode.UNRESTRICTED;
+
+    private NetworkGovernor(Context context) {
+        mConnectivityManager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (mConnectivityManager == null) {
+            return;
+        }
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                mHandler.post(NetworkGovernor.this::update);
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network,
+                                              NetworkCapabilities networkCapabilities) {
+                mHandler.post(NetworkGovernor.this::update);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                mHandler.post(NetworkGovernor.this::update);
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mConnectivityManager.registerDefaultNetworkCallback(callback);
+        } else {
+            // Reports every network, update() only looks at the active one.
+            mConnectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build(), callback);
+        }
+        update();
+    }
+
+    public static NetworkGovernor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NetworkGovernor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the current mode. Safe to call from any thread.
+     */
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns the estimated bytes not downloaded because of the caps of the given mode.
+     */
+    public long getSavedBytes(Mode mode) {
+        Long savedBytes = mSavedBytes.get(mode);
+        return savedBytes == null ? 0 : savedBytes;
+    }
+
+    /**
+     * Counts the bytes of a prefetch skipped in the given mode that were not cached yet as
+     * saved. Only the first skipped prefetch of a url counts, the preview showing again does
+     * not skip another download.
+     */
+    void recordSkippedPrefetch(String uri, Mode mode, long uncachedBytes) {
+        if (mSkippedPrefetches.add(uri)) {
+            addSavedBytes(mode, uncachedBytes);
+        }
+    }
+
+    /**
+     * Estimates savings from the loads of the given player for as long as it lives.
+     */
+    void track(SimpleExoPlayer player) {
+        player.addAnalyticsListener(new SavingsTracker(player));
+    }
+
+    private void addSavedBytes(Mode mode, long bytes) {
+        if (bytes > 0) {
+            mSavedBytes.put(mode, getSavedBytes(mode) + bytes);
+        }
+    }
+
+    private void update() {
+        Mode mode = classify(getActiveCapabilities());
+        if (mode == mMode) {
+            return;
+        }
+        Log.d(LOG_TAG, "Mode " + mMode + " -> " + mode + ", " + getSavedBytes(mMode)
+                + " bytes saved in " + mMode + " so far");
+        mMode = mode;
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onModeChanged(mode);
+        }
+    }
+
+    @Nullable
+    private NetworkCapabilities getActiveCapabilities() {
+        Network network = mConnectivityManager.getActiveNetwork();
+        return network == null ? null : mConnectivityManager.getNetworkCapabilities(network);
+    }
+
+    private static Mode classify(@Nullable NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            // Offline, nothing loads either way. Keep the caps off for when it comes back.
+            return Mode.UNRESTRICTED;
+        }
+        int downstreamKbps = capabilities.getLinkDownstreamBandwidthKbps();
+        if (downstreamKbps > 0 && downstreamKbps < LOW_BANDWIDTH_KBPS) {
+            return Mode.LOW_BANDWIDTH;
+        }
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        if (metered || capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return Mode.DATA_SAVER;
+        }
+        return Mode.UNRESTRICTED;
+    }
+
+    /**
+     * Counts, for every video load made while capped, the bytes the best track of its group
+     * would have needed on top for the same stretch of media.
+     */
+    private class SavingsTracker extends DefaultAnalyticsListener {
+
+        private final SimpleExoPlayer mPlayer;
+
+        SavingsTracker(SimpleExoPlayer player) {
+            mPlayer = player;
+        }
+
+        @Override
+        public void onLoadCompleted(AnalyticsListener.EventTime eventTime,
+                                    MediaSourceEventListener.LoadEventInfo loadEventInfo,
+                                    MediaSourceEventListener.MediaLoadData mediaLoadData) {
+            Mode mode = mMode;
+            Format format = mediaLoadData.trackFormat;
+            if (mode == Mode.UNRESTRICTED || format == null || format.bitrate == Format.NO_VALUE
+                    || mediaLoadData.trackType != C.TRACK_TYPE_VIDEO
+                    || mediaLoadData.mediaStartTimeMs == C.TIME_UNSET
+                    || mediaLoadData.mediaEndTimeMs == C.TIME_UNSET) {
+                return;
+            }
+            int bestBitrate = getBestBitrate(format);
+            long durationMs = mediaLoadData.mediaEndTimeMs - mediaLoadData.mediaStartTimeMs;
+            addSavedBytes(mode, (long) (bestBitrate - format.bitrate) * durationMs / 8000);
+        }
+
+        private int getBestBitrate(Format format) {
+            TrackGroupArray trackGroups = mPlayer.getCurrentTrackGroups();
+            for (int i = 0; i < trackGroups.length; i++) {
+                TrackGroup trackGroup = trackGroups.get(i);
+                if (trackGroup.indexOf(format) == C.INDEX_UNSET) {
+                    continue;
+                }
+                int bestBitrate = format.bitrate;
+                for (int j = 0; j < trackGroup.length; j++) {
+                    bestBitrate = Math.max(bestBitrate, trackGroup.getFormat(j).bitrate);
+                }
+                return bestBitrate;
+            }
+            return format.bitrate;
+        }
+    }
+}
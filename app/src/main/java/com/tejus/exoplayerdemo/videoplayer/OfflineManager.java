@@ -0,0 +1,321 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.offline.DownloadAction;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.offline.ProgressiveDownloadAction;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DummyDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.tejus.exoplayerdemo.AppExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pins videos for offline playback. Downloads run in {@link MediaDownloadService} with a
+ * configurable number of parallel downloads, go into their own cache that is never evicted,
+ * and pick up where they left off after the process dies. A storage quota caps the total
+ * size of pinned content.
+ */
+public class OfflineManager implements DownloadManager.Listener {
+
+    private static final String LOG_TAG = OfflineManager.class.getSimpleName();
+    private static final String DOWNLOAD_DIR = "downloads";
+    private static final String ACTION_FILE = "actions";
+    private static final String INDEX_FILE = "index";
+    private static final long DEFAULT_QUOTA_BYTES = 500 * 1024 * 1024;
+    private static final int DEFAULT_MAX_PARALLEL_DOWNLOADS = 2;
+    private static final int MIN_RETRY_COUNT = 5;
+    private static final long QUOTA_CHECK_INTERVAL_MS = 1000;
+
+    private static final Object LOCK = new Object();
+    private static volatile OfflineManager sInstance;
+    private static long sQuotaBytes = DEFAULT_QUOTA_BYTES;
+    private static int sMaxParallelDownloads = DEFAULT_MAX_PARALLEL_DOWNLOADS;
+
+    private final Context mContext;
+    private final SimpleCache mDownloadCache;
+    private final DownloadManager mDownloadManager;
+    private final DownloadIndex mIndex;
+    private final long mQuotaBytes;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mQuotaCheck = this::checkQuota;
+
+    private OfflineManager(Context context, long quotaBytes, int maxParallelDownloads) {
+        mContext = context;
+        mQuotaBytes = quotaBytes;
+        File downloadDir = new File(context.getFilesDir(), DOWNLOAD_DIR);
+        mDownloadCache = new SimpleCache(new File(downloadDir, "media"), new NoOpCacheEvictor());
+        mIndex = new DownloadIndex(new File(downloadDir, INDEX_FILE));
+        // Loaded before the instance is published, so isDownloaded() is right from the start.
+        mIndex.load();
+        DownloaderConstructorHelper constructorHelper = new DownloaderConstructorHelper(
+                mDownloadCache, HttpStack.getInstance(context).getDataSourceFactory());
+        mDownloadManager = new DownloadManager(constructorHelper, maxParallelDownloads,
+                MIN_RETRY_COUNT, new File(downloadDir, ACTION_FILE),
+                ProgressiveDownloadAction.DESERIALIZER);
+        mDownloadManager.addListener(this);
+    }
+
+    /**
+     * Opens the download cache and reads the download index on first use, so the first call
+     * should be made off the main thread, e.g. by {@link PlaybackWarmer}.
+     */
+    public static OfflineManager getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new OfflineManager(context.getApplicationContext(),
+                            sQuotaBytes, sMaxParallelDownloads);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the storage quota and the number of parallel downloads. Only takes effect if called
+     * before the first call to {@link #getInstance(Context)}.
+     */
+    public static void configure(long quotaBytes, int maxParallelDownloads) {
+        synchronized (LOCK) {
+            if (sInstance != null) {
+                Log.w(LOG_TAG, "Offline manager already created, ignoring new configuration");
+                return;
+            }
+            sQuotaBytes = quotaBytes;
+            sMaxParallelDownloads = maxParallelDownloads;
+        }
+    }
+
+    DownloadManager getDownloadManager() {
+        return mDownloadManager;
+    }
+
+    public void download(String url) {
+        if (mDownloadCache.getCacheSpace() >= mQuotaBytes) {
+            Log.w(LOG_TAG, "Storage quota reached, not downloading " + url);
+            updateIndex(url, DownloadIndex.STATE_QUOTA_EXCEEDED, 0, 0);
+            return;
+        }
+        updateIndex(url, DownloadIndex.STATE_QUEUED, 0, 0);
+        startAction(new ProgressiveDownloadAction(Uri.parse(url), false, null, null));
+    }
+
+    public void remove(String url) {
+        mIndex.remove(url);
+        AppExecutors.getInstance().diskIO().execute(mIndex::save);
+        startAction(new ProgressiveDownloadAction(Uri.parse(url), true, null, null));
+    }
+
+    private void startAction(DownloadAction action) {
+        DownloadService.startWithAction(mContext, MediaDownloadService.class, action, true);
+    }
+
+    /**
+     * Returns whether url was downloaded completely.
+     */
+    public boolean isDownloaded(String url) {
+        DownloadIndex.Entry entry = mIndex.get(url);
+        return entry != null && entry.state == DownloadIndex.STATE_COMPLETED;
+    }
+
+    /**
+     * Returns the download progress of the url in percent, or -1 if it is not pinned.
+     */
+    public float getProgress(String url) {
+        DownloadIndex.Entry entry = mIndex.get(url);
+        return entry == null ? -1 : entry.percentage;
+    }
+
+    public long getUsedBytes() {
+        return mDownloadCache.getCacheSpace();
+    }
+
+    /**
+     * Reads only from the download cache. Opening anything that is not fully downloaded
+     * fails instead of going to the network.
+     */
+    DataSource.Factory getOfflineDataSourceFactory() {
+        return new CacheDataSourceFactory(mDownloadCache, DummyDataSource.FACTORY,
+                CacheDataSource.FLAG_BLOCK_ON_CACHE);
+    }
+
+    /**
+     * Returns a factory that reads url from the downloads if it is pinned completely and from
+     * fallback otherwise. Safe to call on the main thread: the choice, and creating the
+     * manager if nobody has yet, happen when the data source is opened on the loader thread.
+     */
+    static DataSource.Factory getDataSourceFactory(Context context, String url,
+                                                   DataSource.Factory fallback) {
+        Context applicationContext = context.getApplicationContext();
+        return () -> new PinnedOrFallbackDataSource(applicationContext, url, fallback);
+    }
+
+    private void updateIndex(String url, int state, long downloadedBytes, float percentage) {
+        mIndex.put(url, state, downloadedBytes, percentage);
+        AppExecutors.getInstance().diskIO().execute(mIndex::save);
+    }
+
+    @Override
+    public void onInitialized(DownloadManager downloadManager) {
+        Log.d(LOG_TAG, "Download manager initialised with "
+                + downloadManager.getTaskCount() + " pending tasks");
+    }
+
+    @Override
+    public void onTaskStateChanged(DownloadManager downloadManager,
+                                   DownloadManager.TaskState taskState) {
+        if (taskState.action.isRemoveAction) {
+            return;
+        }
+        String url = taskState.action.uri.toString();
+        switch (taskState.state) {
+            case DownloadManager.TaskState.STATE_STARTED:
+                updateIndex(url, DownloadIndex.STATE_DOWNLOADING, taskState.downloadedBytes,
+                        taskState.downloadPercentage);
+                scheduleQuotaCheck();
+                break;
+            case DownloadManager.TaskState.STATE_COMPLETED:
+                updateIndex(url, DownloadIndex.STATE_COMPLETED, taskState.downloadedBytes, 100);
+                break;
+            case DownloadManager.TaskState.STATE_FAILED:
+                DownloadIndex.Entry entry = mIndex.get(url);
+                if (entry == null || entry.state != DownloadIndex.STATE_QUOTA_EXCEEDED) {
+                    updateIndex(url, DownloadIndex.STATE_FAILED, taskState.downloadedBytes,
+                            taskState.downloadPercentage);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onIdle(DownloadManager downloadManager) {
+        mHandler.removeCallbacks(mQuotaCheck);
+        for (DownloadManager.TaskState taskState : downloadManager.getAllTaskStates()) {
+            Log.d(LOG_TAG, "Task " + taskState.taskId + " state " + taskState.state);
+        }
+    }
+
+    private void scheduleQuotaCheck() {
+        mHandler.removeCallbacks(mQuotaCheck);
+        mHandler.postDelayed(mQuotaCheck, QUOTA_CHECK_INTERVAL_MS);
+    }
+
+    private void checkQuota() {
+        DownloadManager.TaskState[] taskStates = mDownloadManager.getAllTaskStates();
+        if (mDownloadCache.getCacheSpace() > mQuotaBytes) {
+            for (DownloadManager.TaskState taskState : taskStates) {
+                if (!taskState.action.isRemoveAction
+                        && taskState.state == DownloadManager.TaskState.STATE_STARTED) {
+                    String url = taskState.action.uri.toString();
+                    Log.w(LOG_TAG, "Storage quota exceeded, cancelling " + url);
+                    updateIndex(url, DownloadIndex.STATE_QUOTA_EXCEEDED,
+                            taskState.downloadedBytes, taskState.downloadPercentage);
+                    startAction(new ProgressiveDownloadAction(taskState.action.uri, true, null, null));
+                }
+            }
+            return;
+        }
+        for (DownloadManager.TaskState taskState : taskStates) {
+            if (!taskState.action.isRemoveAction
+                    && taskState.state == DownloadManager.TaskState.STATE_STARTED) {
+                mIndex.put(taskState.action.uri.toString(), DownloadIndex.STATE_DOWNLOADING,
+                        taskState.downloadedBytes, taskState.downloadPercentage);
+                scheduleQuotaCheck();
+            }
+        }
+        AppExecutors.getInstance().diskIO().execute(mIndex::save);
+    }
+
+    List<DownloadIndex.Entry> getEntries() {
+        return mIndex.getEntries();
+    }
+
+    /**
+     * Picks between the downloads and the fallback the first time it is opened.
+     */
+    private static class PinnedOrFallbackDataSource implements DataSource {
+
+        private final Context mContext;
+        private final String mUrl;
+        private final DataSource.Factory mFallback;
+        private final List<TransferListener> mTransferListeners = new ArrayList<>();
+        private DataSource mDataSource;
+
+        PinnedOrFallbackDataSource(Context context, String url, DataSource.Factory fallback) {
+            mContext = context;
+            mUrl = url;
+            mFallback = fallback;
+        }
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            mTransferListeners.add(transferListener);
+            if (mDataSource != null) {
+                mDataSource.addTransferListener(transferListener);
+            }
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            if (mDataSource == null) {
+                OfflineManager offlineManager = getInstance(mContext);
+                if (offlineManager.isDownloaded(mUrl)) {
+                    Log.d(LOG_TAG, "Playing " + mUrl + " from downloads");
+                    mDataSource = offlineManager.getOfflineDataSourceFactory().createDataSource();
+                } else {
+                    mDataSource = mFallback.createDataSource();
+                }
+                for (TransferListener transferListener : mTransferListeners) {
+                    mDataSource.addTransferListener(transferListener);
+                }
+            }
+            return mDataSource.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            return mDataSource.read(buffer, offset, readLength);
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return mDataSource == null ? null : mDataSource.getUri();
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return mDataSource == null
+                    ? Collections.emptyMap() : mDataSource.getResponseHeaders();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mDataSource != null) {
+                mDataSource.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mirror urls per media url and the health of every origin host. Origins are tried in the
+ * order the mirrors were given, except that an origin that failed recently, or whose first
+ * bytes are slow on average, is demoted behind the others. Thread safe.
+ */
+public class Origins {
+
+    private static final String LOG_TAG = Origins.class.getSimpleName();
+    private static final Object LOCK = new Object();
+    private static final long FAILURE_PENALTY_MS = 60000;
+    private static final long SLOW_FIRST_BYTE_MS = 1500;
+
+    private static volatile Origins sInstance;
+
+    private final Map<String, List<String>> mMirrors = new HashMap<>();
+    private final Map<String, Health> mHealth = new HashMap<>();
+
+    private Origins() {
+    }
+
+    public static Origins getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new Origins();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Registers urls serving the same bytes as url, in order of preference after url itself.
+     * The media cache keeps using url as the key whichever origin the bytes come from.
+     */
+    public synchronized void setMirrors(String url, List<String> mirrors) {
+        List<String> origins = new ArrayList<>();
+        origins.add(url);
+        for (String mirror : mirrors) {
+            if (!origins.contains(mirror)) {
+                origins.add(mirror);
+            }
+        }
+        mMirrors.put(url, origins);
+    }
+
+    /**
+     * Returns url and its mirrors, the healthy origins first.
+     */
+    synchronized List<String> getOrigins(String url) {
+        List<String> origins = mMirrors.get(url);
+        if (origins == null) {
+            List<String> single = new ArrayList<>(1);
+            single.add(url);
+            return single;
+        }
+        List<String> healthy = new ArrayList<>(origins.size());
+        List<String> demoted = new ArrayList<>();
+        for (String origin : origins) {
+            (isDemoted(origin) ? demoted : healthy).add(origin);
+        }
+        healthy.addAll(demoted);
+        return healthy;
+    }
+
+    synchronized void recordFirstByte(String url, long firstByteMs) {
+        Health health = getHealth(url);
+        health.firstByteMs = health.firstByteMs < 0
+                ? firstByteMs : (health.firstByteMs * 3 + firstByteMs) / 4;
+    }
+
+    synchronized void recordFailure(String url) {
+        Log.w(LOG_TAG, "Origin failed: " + getKey(url));
+        getHealth(url).failedAtMs = SystemClock.elapsedRealtime();
+    }
+
+    private boolean isDemoted(String url) {
+        Health health = mHealth.get(getKey(url));
+        if (health == null) {
+            return false;
+        }
+        return (health.failedAtMs >= 0
+                && SystemClock.elapsedRealtime() - health.failedAtMs < FAILURE_PENALTY_MS)
+                || health.firstByteMs > SLOW_FIRST_BYTE_MS;
+    }
+
+    private Health getHealth(String url) {
+        String key = getKey(url);
+        Health health = mHealth.get(key);
+        if (health == null) {
+            health = new Health();
+            mHealth.put(key, health);
+        }
+        return health;
+    }
+
+    private static String getKey(String url) {
+        Uri uri = Uri.parse(url);
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    private static class Health {
+        // Moving average of the time to response headers, or -1 before the first response.
+        long firstByteMs = -1;
+        long failedAtMs = -1;
+    }
+}
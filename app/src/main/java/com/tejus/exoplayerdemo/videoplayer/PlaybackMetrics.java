@@ -0,0 +1,310 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Surface;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.analytics.DefaultAnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.tejus.exoplayerdemo.BuildConfig;
+import com.tejus.exoplayerdemo.Histogram;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide quality of experience metrics. Each player gets a {@link Session} that
+ * listens to its analytics events, and finished sessions are folded into histograms that
+ * can be queried with {@link #getSnapshot()} or pushed to registered {@link Exporter}s.
+ */
+public class PlaybackMetrics {
+
+    private static final String LOG_TAG = PlaybackMetrics.class.getSimpleName();
+
+    public interface Exporter {
+        void export(Snapshot snapshot);
+    }
+
+    private static PlaybackMetrics sInstance;
+
+    private final Histogram mStartupMs = new Histogram();
+    private final Histogram mStallMs = new Histogram();
+    private final Histogram mSeekMs = new Histogram();
+    private final Histogram mSyncSeekMs = new Histogram();
+    private final Histogram mExactSeekMs = new Histogram();
+    private final Histogram mBandwidthKbps = new Histogram();
+    private final Map<String, Histogram> mDecoderInitMs = new HashMap<>();
+    private final AtomicLong mSessions = new AtomicLong();
+    private final AtomicLong mRebuffers = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mBytesLoaded = new AtomicLong();
+    private final List<Exporter> mExporters = new CopyOnWriteArrayList<>();
+    private final Map<SimpleExoPlayer, Session> mActiveSessions = new WeakHashMap<>();
+
+    private PlaybackMetrics() {
+        if (BuildConfig.DEBUG) {
+            addExporter(new LogExporter());
+        }
+    }
+
+    public static synchronized PlaybackMetrics getInstance() {
+        if (sInstance == null) {
+            sInstance = new PlaybackMetrics();
+        }
+        return sInstance;
+    }
+
+    public void addExporter(Exporter exporter) {
+        mExporters.add(exporter);
+    }
+
+    public void removeExporter(Exporter exporter) {
+        mExporters.remove(exporter);
+    }
+
+    /**
+     * Starts measuring the given player. Call this right before the player is prepared so the
+     * startup time covers the whole connect and buffer phase.
+     */
+    void startSession(SimpleExoPlayer player) {
+        endSession(player);
+        Session session = new Session(SystemClock.elapsedRealtime());
+        mActiveSessions.put(player, session);
+        player.addAnalyticsListener(session);
+    }
+
+    /**
+     * Stops measuring the given player and exports the updated totals. Safe to call for a
+     * player that has no session.
+     */
+    void endSession(SimpleExoPlayer player) {
+        Session session = mActiveSessions.remove(player);
+        if (session == null) {
+            return;
+        }
+        player.removeAnalyticsListener(session);
+        session.finish(SystemClock.elapsedRealtime());
+        mSessions.incrementAndGet();
+        Snapshot snapshot = getSnapshot();
+        for (Exporter exporter : mExporters) {
+            exporter.export(snapshot);
+        }
+    }
+
+    /**
+     * Tags the next seek of the given player, so its latency is also recorded under the seek
+     * mode it used.
+     *
+     * @param snapped whether the seek lands on a sync frame rather than the exact position.
+     */
+    void tagNextSeek(SimpleExoPlayer player, boolean snapped) {
+        Session session = mActiveSessions.get(player);
+        if (session != null) {
+            session.mNextSeekSnapped = snapped;
+        }
+    }
+
+    /**
+     * Records how long a decoder took to initialise. Safe to call from any thread.
+     */
+    void recordDecoderInit(String decoderName, long initMs) {
+        Histogram histogram;
+        synchronized (mDecoderInitMs) {
+            histogram = mDecoderInitMs.get(decoderName);
+            if (histogram == null) {
+                histogram = new Histogram();
+                mDecoderInitMs.put(decoderName, histogram);
+            }
+        }
+        histogram.record(initMs);
+    }
+
+    public Snapshot getSnapshot() {
+        Map<String, Histogram.Snapshot> decoderInitMs = new TreeMap<>();
+        synchronized (mDecoderInitMs) {
+            for (Map.Entry<String, Histogram> entry : mDecoderInitMs.entrySet()) {
+                decoderInitMs.put(entry.getKey(), entry.getValue().snapshot());
+            }
+        }
+        return new Snapshot(mSessions.get(), mRebuffers.get(), mDroppedFrames.get(),
+                mBytesLoaded.get(), mStartupMs.snapshot(), mStallMs.snapshot(),
+                mSeekMs.snapshot(), mSyncSeekMs.snapshot(), mExactSeekMs.snapshot(),
+                mBandwidthKbps.snapshot(), decoderInitMs);
+    }
+
+    public void reset() {
+        mSessions.set(0);
+        mRebuffers.set(0);
+        mDroppedFrames.set(0);
+        mBytesLoaded.set(0);
+        mStartupMs.reset();
+        mStallMs.reset();
+        mSeekMs.reset();
+        mSyncSeekMs.reset();
+        mExactSeekMs.reset();
+        mBandwidthKbps.reset();
+        synchronized (mDecoderInitMs) {
+            mDecoderInitMs.clear();
+        }
+    }
+
+    public static class Snapshot {
+
+        public final long sessions;
+        public final long rebuffers;
+        public final long droppedFrames;
+        public final long bytesLoaded;
+        public final Histogram.Snapshot startupMs;
+        public final Histogram.Snapshot stallMs;
+        public final Histogram.Snapshot seekMs;
+        public final Histogram.Snapshot syncSeekMs;
+        public final Histogram.Snapshot exactSeekMs;
+        public final Histogram.Snapshot bandwidthKbps;
+        /**
+         * Decoder initialisation times by decoder name. Prewarmed decoders are prefixed
+         * with "prewarm:".
+         */
+        public final Map<String, Histogram.Snapshot> decoderInitMs;
+
+        Snapshot(long sessions, long rebuffers, long droppedFrames, long bytesLoaded,
+                 Histogram.Snapshot startupMs, Histogram.Snapshot stallMs,
+                 Histogram.Snapshot seekMs, Histogram.Snapshot syncSeekMs,
+                 Histogram.Snapshot exactSeekMs, Histogram.Snapshot bandwidthKbps,
+                 Map<String, Histogram.Snapshot> decoderInitMs) {
+            this.sessions = sessions;
+            this.rebuffers = rebuffers;
+            this.droppedFrames = droppedFrames;
+            this.bytesLoaded = bytesLoaded;
+            this.startupMs = startupMs;
+            this.stallMs = stallMs;
+            this.seekMs = seekMs;
+            this.syncSeekMs = syncSeekMs;
+            this.exactSeekMs = exactSeekMs;
+            this.bandwidthKbps = bandwidthKbps;
+            this.decoderInitMs = decoderInitMs;
+        }
+
+        @Override
+        public String toString() {
+            return "sessions=" + sessions + " rebuffers=" + rebuffers
+                    + " droppedFrames=" + droppedFrames + " bytesLoaded=" + bytesLoaded
+                    + "\n startupMs: " + startupMs
+                    + "\n stallMs: " + stallMs
+                    + "\n seekMs: " + seekMs
+                    + "\n syncSeekMs: " + syncSeekMs
+                    + "\n exactSeekMs: " + exactSeekMs
+                    + "\n bandwidthKbps: " + bandwidthKbps
+                    + "\n decoderInitMs: " + decoderInitMs;
+        }
+    }
+
+    public static class LogExporter implements Exporter {
+        @Override
+        public void export(Snapshot snapshot) {
+            Log.d(LOG_TAG, snapshot.toString());
+        }
+    }
+
+    private class Session extends DefaultAnalyticsListener {
+
+        private final long mStartRealtimeMs;
+        private boolean mFirstFrameRendered;
+        private boolean mPlaybackStarted;
+        private long mStallStartRealtimeMs = C.TIME_UNSET;
+        private long mSeekStartRealtimeMs = C.TIME_UNSET;
+        private boolean mNextSeekSnapped;
+        private boolean mSeekSnapped;
+
+        Session(long startRealtimeMs) {
+            mStartRealtimeMs = startRealtimeMs;
+        }
+
+        @Override
+        public void onRenderedFirstFrame(EventTime eventTime, @Nullable Surface surface) {
+            if (!mFirstFrameRendered) {
+                mFirstFrameRendered = true;
+                mStartupMs.record(eventTime.realtimeMs - mStartRealtimeMs);
+            }
+        }
+
+        @Override
+        public void onPlayerStateChanged(EventTime eventTime, boolean playWhenReady,
+                                         int playbackState) {
+            if (playbackState == Player.STATE_READY) {
+                mPlaybackStarted = true;
+                endStall(eventTime.realtimeMs);
+                if (mSeekStartRealtimeMs != C.TIME_UNSET) {
+                    long seekMs = eventTime.realtimeMs - mSeekStartRealtimeMs;
+                    mSeekMs.record(seekMs);
+                    (mSeekSnapped ? mSyncSeekMs : mExactSeekMs).record(seekMs);
+                    mSeekStartRealtimeMs = C.TIME_UNSET;
+                }
+            } else if (playbackState == Player.STATE_BUFFERING) {
+                if (mPlaybackStarted && playWhenReady
+                        && mSeekStartRealtimeMs == C.TIME_UNSET
+                        && mStallStartRealtimeMs == C.TIME_UNSET) {
+                    mRebuffers.incrementAndGet();
+                    mStallStartRealtimeMs = eventTime.realtimeMs;
+                }
+            } else {
+                endStall(eventTime.realtimeMs);
+            }
+        }
+
+        @Override
+        public void onSeekStarted(EventTime eventTime) {
+            mSeekSnapped = mNextSeekSnapped;
+            mNextSeekSnapped = false;
+            if (!mPlaybackStarted) {
+                // The initial seek to a restored position is part of startup.
+                return;
+            }
+            mSeekStartRealtimeMs = eventTime.realtimeMs;
+            endStall(eventTime.realtimeMs);
+        }
+
+        @Override
+        public void onDecoderInitialized(EventTime eventTime, int trackType, String decoderName,
+                                         long initializationDurationMs) {
+            recordDecoderInit(decoderName, initializationDurationMs);
+        }
+
+        @Override
+        public void onDroppedVideoFrames(EventTime eventTime, int droppedFrames, long elapsedMs) {
+            mDroppedFrames.addAndGet(droppedFrames);
+        }
+
+        @Override
+        public void onLoadCompleted(EventTime eventTime,
+                                    MediaSourceEventListener.LoadEventInfo loadEventInfo,
+                                    MediaSourceEventListener.MediaLoadData mediaLoadData) {
+            mBytesLoaded.addAndGet(loadEventInfo.bytesLoaded);
+        }
+
+        @Override
+        public void onBandwidthEstimate(EventTime eventTime, int totalLoadTimeMs,
+                                        long totalBytesLoaded, long bitrateEstimate) {
+            mBandwidthKbps.record(bitrateEstimate / 1000);
+        }
+
+        private void endStall(long realtimeMs) {
+            if (mStallStartRealtimeMs != C.TIME_UNSET) {
+                mStallMs.record(realtimeMs - mStallStartRealtimeMs);
+                mStallStartRealtimeMs = C.TIME_UNSET;
+            }
+        }
+
+        void finish(long realtimeMs) {
+            endStall(realtimeMs);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.IBinder;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+/**
+ * Keeps the process in the foreground while a {@link PlayerInstance} plays audio with no
+ * screen showing it. The service holds no player itself; it runs with the media
+ * notification of the {@link PlaybackSession} and drops out of the foreground while playback
+ * is paused, so the notification can be dismissed. Must only be used from the main thread.
+ */
+public class PlaybackService extends Service {
+
+    private static final String LOG_TAG = PlaybackService.class.getSimpleName();
+
+    private static PlaybackService sInstance;
+    private static boolean sPlaying = true;
+
+    static void start(Context context) {
+        sPlaying = true;
+        ContextCompat.startForegroundService(context, new Intent(context, PlaybackService.class));
+    }
+
+    /**
+     * Stops the service. The notification stays up, it is the session's to remove.
+     */
+    static void stop(Context context) {
+        if (sInstance != null) {
+            sInstance.stopForeground(false);
+        }
+        context.stopService(new Intent(context, PlaybackService.class));
+    }
+
+    /**
+     * Moves the running service in or out of the foreground as playback resumes or pauses.
+     */
+    static void setPlaying(boolean playing) {
+        sPlaying = playing;
+        if (sInstance != null) {
+            sInstance.updateForeground();
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Log.d(LOG_TAG, "onCreate()");
+        sInstance = this;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Every start has to be answered with startForeground, even if paused by now.
+        startForeground(SessionPublisher.NOTIFICATION_ID,
+                PlaybackSession.getInstance(this).buildNotification());
+        if (!sPlaying) {
+            stopForeground(false);
+        }
+        return START_NOT_STICKY;
+    }
+
+    private void updateForeground() {
+        if (sPlaying) {
+            startForeground(SessionPublisher.NOTIFICATION_ID,
+                    PlaybackSession.getInstance(this).buildNotification());
+        } else {
+            stopForeground(false);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.d(LOG_TAG, "onDestroy()");
+        sInstance = null;
+        stopForeground(false);
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
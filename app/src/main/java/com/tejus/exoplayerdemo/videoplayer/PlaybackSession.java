@@ -0,0 +1,102 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+
+/**
+ * The one MediaSession of the app and its notification. Whichever {@link PlayerInstance}
+ * started playing last owns it; media buttons and notification actions go to that owner, and
+ * updates from other instances are ignored. Must only be used from the main thread.
+ */
+class PlaybackSession {
+
+    private static final String LOG_TAG = PlaybackSession.class.getSimpleName();
+
+    private static PlaybackSession sInstance;
+
+    private final MediaSessionCompat mMediaSession;
+    private final SessionPublisher mSessionPublisher;
+    private Object mOwner;
+
+    private PlaybackSession(Context context) {
+        mMediaSession = new MediaSessionCompat(context, LOG_TAG);
+        mMediaSession.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS |
+                MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
+        mMediaSession.setMediaButtonReceiver(null);
+        mSessionPublisher = new SessionPublisher(context, mMediaSession, (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE));
+    }
+
+    static PlaybackSession getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlaybackSession(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the session if it has been created, for routing media button intents.
+     */
+    static MediaSessionCompat peekMediaSession() {
+        return sInstance == null ? null : sInstance.mMediaSession;
+    }
+
+    /**
+     * Makes owner the target of media buttons and the source of the published state.
+     */
+    void claim(Object owner, MediaSessionCompat.Callback callback) {
+        if (mOwner == owner) {
+            return;
+        }
+        Log.d(LOG_TAG, "Session claimed by " + owner);
+        mSessionPublisher.cancel();
+        mOwner = owner;
+        mMediaSession.setCallback(callback);
+        mMediaSession.setActive(true);
+    }
+
+    boolean isOwner(Object owner) {
+        return mOwner == owner;
+    }
+
+    void publish(Object owner, boolean playWhenReady, int playbackState, long position) {
+        if (mOwner == owner) {
+            mSessionPublisher.publish(playWhenReady, playbackState, position);
+        }
+    }
+
+    void setMetadata(Object owner, String title, String text) {
+        if (mOwner == owner) {
+            mSessionPublisher.setMetadata(title, text);
+        }
+    }
+
+    Notification buildNotification() {
+        return mSessionPublisher.buildNotification();
+    }
+
+    /**
+     * Removes the notification if owner still owns the session.
+     */
+    void cancel(Object owner) {
+        if (mOwner == owner) {
+            mSessionPublisher.cancel();
+        }
+    }
+
+    /**
+     * Gives up ownership. The session goes inactive until someone claims it again.
+     */
+    void release(Object owner) {
+        if (mOwner != owner) {
+            return;
+        }
+        mSessionPublisher.cancel();
+        mMediaSession.setCallback(null);
+        mMediaSession.setActive(false);
+        mOwner = null;
+    }
+}
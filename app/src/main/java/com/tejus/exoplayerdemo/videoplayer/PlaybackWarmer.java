@@ -0,0 +1,67 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.tejus.exoplayerdemo.AppExecutors;
+import com.tejus.exoplayerdemo.R;
+import com.tejus.exoplayerdemo.TaskScheduler;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Does the slow, thread-safe parts of getting ready to play on the disk thread once playback
+ * looks likely: opening the media and download caches, reading the bandwidth history, and
+ * querying the codec list so the first decoder lookup of the player is a cache hit.
+ * Optionally also prewarms the decoder the {@link DecoderPolicy} would pick for H.264.
+ */
+class PlaybackWarmer {
+
+    private static final String LOG_TAG = PlaybackWarmer.class.getSimpleName();
+    private static final AtomicBoolean sStarted = new AtomicBoolean();
+
+    private PlaybackWarmer() {
+    }
+
+    /**
+     * Starts warming up unless that already happened in this process. Skipped while the disk
+     * thread is backed up, the next call tries again.
+     */
+    static void start(Context context) {
+        if (!sStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        boolean prewarmDecoder = context.getResources().getBoolean(R.bool.prewarm_decoder);
+        try {
+            AppExecutors.getInstance().diskIO().submit(null, null, TaskScheduler.Priority.NORMAL,
+                    () -> warmUp(applicationContext, prewarmDecoder));
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Exception caught in start: " + e.getMessage());
+            sStarted.set(false);
+        }
+    }
+
+    private static void warmUp(Context context, boolean prewarmDecoder) {
+        TraceCompat.beginSection("PlaybackWarmer.warmUp");
+        try {
+            MediaCache.getInstance(context);
+            OfflineManager.getInstance(context);
+            SharedBandwidthMeter.getInstance(context);
+            MediaCodecUtil.getDecoderInfo(MimeTypes.VIDEO_H264, false);
+            MediaCodecUtil.getDecoderInfo(MimeTypes.AUDIO_AAC, false);
+            if (prewarmDecoder) {
+                DecoderPolicy.getInstance().prewarm(MimeTypes.VIDEO_H264);
+            }
+            Log.d(LOG_TAG, "Playback warmed up");
+        } catch (MediaCodecUtil.DecoderQueryException e) {
+            Log.e(LOG_TAG, "Exception caught in warmUp: " + e.getMessage());
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+}
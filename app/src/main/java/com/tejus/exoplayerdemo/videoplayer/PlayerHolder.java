@@ -0,0 +1,91 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a prepared player alive while it moves from one {@link PlayerInstance} to another,
+ * e.g. between MainActivity and FullscreenActivity. Players are matched by their playlist.
+ * A player that nobody takes back within {@link #RELEASE_TIMEOUT_MS} goes back to the
+ * {@link PlayerPool}. Must only be used from the main thread.
+ */
+class PlayerHolder {
+
+    private static final String LOG_TAG = PlayerHolder.class.getSimpleName();
+    private static final long RELEASE_TIMEOUT_MS = 5000;
+
+    private static PlayerHolder sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mReleaseRunnable = this::release;
+    private PlayerPool.Lease mLease;
+    private ConcatenatingMediaSource mMediaSource;
+    private List<String> mPlaylist;
+
+    private PlayerHolder() {
+    }
+
+    static PlayerHolder getInstance() {
+        if (sInstance == null) {
+            sInstance = new PlayerHolder();
+        }
+        return sInstance;
+    }
+
+    void hold(PlayerPool.Lease lease, ConcatenatingMediaSource mediaSource, List<String> playlist) {
+        Log.d(LOG_TAG, "hold()");
+        release();
+        lease.transfer(null, revokedLease -> release());
+        mLease = lease;
+        mMediaSource = mediaSource;
+        mPlaylist = new ArrayList<>(playlist);
+        mHandler.postDelayed(mReleaseRunnable, RELEASE_TIMEOUT_MS);
+    }
+
+    @Nullable
+    HeldPlayer take(List<String> playlist) {
+        if (mLease == null || !mPlaylist.equals(playlist)) {
+            release();
+            return null;
+        }
+        Log.d(LOG_TAG, "take()");
+        mHandler.removeCallbacks(mReleaseRunnable);
+        HeldPlayer heldPlayer = new HeldPlayer(mLease, mMediaSource);
+        clear();
+        return heldPlayer;
+    }
+
+    void release() {
+        mHandler.removeCallbacks(mReleaseRunnable);
+        if (mLease != null) {
+            Log.d(LOG_TAG, "Recycling unclaimed player");
+            PlayerPool.Lease lease = mLease;
+            clear();
+            lease.recycle();
+        }
+    }
+
+    private void clear() {
+        mLease = null;
+        mMediaSource = null;
+        mPlaylist = null;
+    }
+
+    static class HeldPlayer {
+
+        final PlayerPool.Lease lease;
+        final ConcatenatingMediaSource mediaSource;
+
+        HeldPlayer(PlayerPool.Lease lease, ConcatenatingMediaSource mediaSource) {
+            this.lease = lease;
+            this.mediaSource = mediaSource;
+        }
+    }
+}
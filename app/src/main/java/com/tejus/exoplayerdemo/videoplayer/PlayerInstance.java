@@ -1,34 +1,35 @@
 package com.tejus.exoplayerdemo.videoplayer;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.support.annotation.RequiresApi;
-import android.support.v4.app.NotificationCompat;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.media.session.MediaButtonReceiver;
 import android.support.v4.media.session.MediaSessionCompat;
-import android.support.v4.media.session.PlaybackStateCompat;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.android.exoplayer2.C;
-import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
-import com.google.android.exoplayer2.audio.AudioAttributes;
-import com.google.android.exoplayer2.source.ExtractorMediaSource;
+import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.google.android.exoplayer2.ui.PlayerView;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
-import com.google.android.exoplayer2.util.Util;
-import com.tejus.exoplayerdemo.MainActivity;
-import com.tejus.exoplayerdemo.R;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class PlayerInstance {
 
@@ -37,18 +38,43 @@ public class PlayerInstance {
     private static final String CURRENT_POSITION_KEY = "current_position";
     private static final String CURRENT_WINDOW_KEY = "current_window";
     private static final String PLAY_WHEN_READY_KEY = "play_when_ready";
-    private static final String NOTIFICATION_CHANNEL_ID = "Video";
+    private static final String PLAYLIST_KEY = "playlist";
+    private static final long SEEK_TOLERANCE_MS = 1000;
+    private static final long POSITION_SAVE_INTERVAL_MS = 10000;
+    private static final int MAX_DECODER_RETRIES = 2;
+
+    // Closed while playing in the background, until stopped or taken over by another instance.
+    private static PlayerInstance sBackgroundInstance;
 
     private Context mContext;
     private PlayerView mPlayerView;
     private SimpleExoPlayer mPlayer;
-    private String mVideoUri;
+    private final ArrayList<String> mPlaylist = new ArrayList<>();
+    private ConcatenatingMediaSource mMediaSource;
     private long mCurrentPosition;
     private int mCurrentWindowIndex;
     private boolean mPlayWhenReady;
-    private static MediaSessionCompat mMediaSession;
-    private PlaybackStateCompat.Builder mStateBuilder;
-    private NotificationManager mNotificationManager;
+    private PlaybackSession mPlaybackSession;
+    private final MediaSessionCallback mSessionCallback = new MediaSessionCallback();
+    private PlayerPool.Lease mLease;
+    private PositionStore mPositionStore;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSavePositionRunnable = this::savePositionPeriodically;
+    private final ExoEventCallback mEventCallback = new ExoEventCallback();
+    private BufferProfile mBufferProfile;
+    private DefaultTrackSelector mTrackSelector;
+    // Extensions given for playlist items whose content type can't be inferred from the uri.
+    private final Map<String, String> mOverrideExtensions = new HashMap<>();
+    private int mMaxVideoBitrate = Integer.MAX_VALUE;
+    private int mMaxVideoWidth = Integer.MAX_VALUE;
+    private int mMaxVideoHeight = Integer.MAX_VALUE;
+    private ScrubPreview mScrubPreview;
+    private SeekController mSeekController;
+    private boolean mInBackground;
+    private NetworkGovernor mNetworkGovernor;
+    private final NetworkGovernor.Listener mGovernorListener = mode -> applyTrackConstraints();
+    private int mDecoderRetries;
+    private String mTrickPlayUrl;
 
     public PlayerInstance(Context context, PlayerView playerView, Bundle bundle) {
         if (playerView != null) {
@@ -57,69 +83,191 @@ public class PlayerInstance {
             mCurrentPosition = C.TIME_UNSET;
             mCurrentWindowIndex = C.INDEX_UNSET;
             mPlayWhenReady = false;
-            mNotificationManager = (NotificationManager)
-                    context.getSystemService(Context.NOTIFICATION_SERVICE);
+            // Starts loading saved positions on the disk thread. The session, buffer profile
+            // and player are only set up once something is played.
+            mPositionStore = PositionStore.getInstance(context);
+            mScrubPreview = ScrubPreview.attach(context, playerView);
+            mSeekController = new SeekController(context, mPlaylist);
+            mPlayerView.setControlDispatcher(mSeekController);
             if (bundle != null) {
                 mCurrentPosition = bundle.getLong(CURRENT_POSITION_KEY);
                 mCurrentWindowIndex = bundle.getInt(CURRENT_WINDOW_KEY);
                 mPlayWhenReady = bundle.getBoolean(PLAY_WHEN_READY_KEY);
+                ArrayList<String> playlist = bundle.getStringArrayList(PLAYLIST_KEY);
+                if (playlist != null) {
+                    mPlaylist.addAll(playlist);
+                }
             } else {
                 mCurrentPosition = C.TIME_UNSET;
                 mCurrentWindowIndex = C.INDEX_UNSET;
                 mPlayWhenReady = false;
             }
-            initialiseMediaSession();
+            mPlayerView.addOnLayoutChangeListener((v, left, top, right, bottom,
+                                                   oldLeft, oldTop, oldRight, oldBottom) -> {
+                if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                    applyTrackConstraints();
+                }
+            });
         } else {
             throw new IllegalArgumentException(context.toString()
                     + " must pass a valid PlayerView!");
         }
     }
 
-    private void initialiseMediaSession() {
-        Log.d(LOG_TAG, "initialiseMediaSession()");
-        mMediaSession = new MediaSessionCompat(mContext, LOG_TAG + mContext);
-        mMediaSession.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS |
-                MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
-        mMediaSession.setMediaButtonReceiver(null);
-        mStateBuilder = new PlaybackStateCompat.Builder()
-                .setActions(PlaybackStateCompat.ACTION_PLAY |
-                        PlaybackStateCompat.ACTION_PAUSE |
-                        PlaybackStateCompat.ACTION_PLAY_PAUSE |
-                        PlaybackStateCompat.ACTION_FAST_FORWARD |
-                        PlaybackStateCompat.ACTION_REWIND |
-                        PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
-                        PlaybackStateCompat.ACTION_STOP);
-        mMediaSession.setPlaybackState(mStateBuilder.build());
-        mMediaSession.setCallback(new MediaSessionCallback());
-        mMediaSession.setActive(true);
+    /**
+     * Call when playback is likely to start soon, e.g. when a preview is shown. Opens caches
+     * and queries codecs off the main thread so play() has less to do.
+     */
+    public void warmUp() {
+        PlaybackWarmer.start(mContext);
     }
 
     private void initialisePlayer() {
+        TraceCompat.beginSection("PlayerInstance.initialisePlayer");
+        try {
+            setUpPlayer();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void setUpPlayer() {
         Log.d(LOG_TAG, "initialisePlayer()");
-        String userAgent = Util.getUserAgent(mContext, "ExoPlayerDemo");
+        if (mBufferProfile == null) {
+            mBufferProfile = BufferProfile.select(mContext);
+        }
+        if (mPlaybackSession == null) {
+            TraceCompat.beginSection("PlaybackSession.create");
+            mPlaybackSession = PlaybackSession.getInstance(mContext);
+            TraceCompat.endSection();
+        }
+        if (mNetworkGovernor == null) {
+            mNetworkGovernor = NetworkGovernor.getInstance(mContext);
+        }
+        mNetworkGovernor.addListener(mGovernorListener);
+        mDecoderRetries = 0;
+
+        PlayerHolder.HeldPlayer heldPlayer = PlayerHolder.getInstance().take(mPlaylist);
+        if (heldPlayer != null) {
+            Log.d(LOG_TAG, "Reusing the player handed off by the previous screen");
+            mLease = heldPlayer.lease;
+            mLease.transfer(mPlayerView, this::onPlayerRevoked);
+            mPlayer = mLease.getPlayer();
+            mTrackSelector = mLease.getTrackSelector();
+            mMediaSource = heldPlayer.mediaSource;
+            mPlayerView.setPlayer(mPlayer);
+            mPlayer.addListener(mEventCallback);
+            applyTrackConstraints();
+            mPlaybackSession.claim(this, mSessionCallback);
+            mEventCallback.onPlayerStateChanged(mPlayer.getPlayWhenReady(), mPlayer.getPlaybackState());
+            return;
+        }
 
-        mPlayer = ExoPlayerFactory.newSimpleInstance(mContext);
+        mLease = PlayerPool.getInstance(mContext)
+                .acquire(mBufferProfile, mPlayerView, this::onPlayerRevoked);
+        mPlayer = mLease.getPlayer();
+        mTrackSelector = mLease.getTrackSelector();
+        applyTrackConstraints();
         mPlayerView.setPlayer(mPlayer);
-        mPlayer.addListener(new ExoEventCallback());
+        mPlayer.addListener(mEventCallback);
+        mPlaybackSession.claim(this, mSessionCallback);
+
+        // The player starts loading the next item as soon as the current one is fully buffered,
+        // so consecutive items play back without a startup stall in between.
+        mMediaSource = new ConcatenatingMediaSource();
+        for (String uri : mPlaylist) {
+            mMediaSource.addMediaSource(createMediaSource(uri));
+        }
 
-        AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                .setUsage(C.USAGE_MEDIA)
-                .setContentType(C.CONTENT_TYPE_SPEECH)
-                .build();
-        mPlayer.setAudioAttributes(audioAttributes, true);
+        PlaybackMetrics.getInstance().startSession(mPlayer);
+        if (mCurrentPosition == C.TIME_UNSET) {
+            if (mPositionStore.isLoaded()) {
+                restoreSavedPosition();
+            } else {
+                // Start from the top now and move to the saved position once it is known.
+                SimpleExoPlayer player = mPlayer;
+                mPositionStore.whenLoaded(() -> restoreSavedPositionLate(player));
+            }
+        }
+        if (mCurrentPosition != C.TIME_UNSET && mCurrentWindowIndex != C.INDEX_UNSET
+                && mCurrentWindowIndex < mPlaylist.size()) {
+            mSeekController.seekExactly(mPlayer, mCurrentWindowIndex, mCurrentPosition);
+            mPlayer.prepare(mMediaSource, false, false);
+            mPlayer.setPlayWhenReady(mPlayWhenReady);
+        } else {
+            mPlayer.prepare(mMediaSource);
+            mPlayWhenReady = true;
+            mPlayer.setPlayWhenReady(true);
+        }
+    }
 
-        DefaultHttpDataSourceFactory httpSourceFactory = new DefaultHttpDataSourceFactory(userAgent);
-        ExtractorMediaSource extractorMediaSource = new ExtractorMediaSource.Factory(httpSourceFactory)
-                .createMediaSource(Uri.parse(mVideoUri));
+    /**
+     * Picks up where the first playlist item with a saved position was left, e.g. before the
+     * process was killed.
+     */
+    private void restoreSavedPosition() {
+        for (int i = 0; i < mPlaylist.size(); i++) {
+            PositionLog.Position position = mPositionStore.get(mPlaylist.get(i));
+            if (position != null) {
+                Log.d(LOG_TAG, "Restoring saved position " + position.positionMs
+                        + " of " + position.url);
+                mCurrentWindowIndex = i;
+                mCurrentPosition = position.positionMs;
+                mPlayWhenReady = position.playWhenReady;
+                return;
+            }
+        }
+    }
 
+    /**
+     * Seeks to the saved position that was still being loaded when player was prepared, unless
+     * the player was replaced or has moved on since.
+     */
+    private void restoreSavedPositionLate(SimpleExoPlayer player) {
+        if (player != mPlayer || mPlayer.getCurrentWindowIndex() != 0
+                || mPlayer.getCurrentPosition() > SEEK_TOLERANCE_MS) {
+            return;
+        }
+        restoreSavedPosition();
         if (mCurrentPosition != C.TIME_UNSET && mCurrentWindowIndex != C.INDEX_UNSET) {
-            mPlayer.seekTo(mCurrentWindowIndex, mCurrentPosition);
-            mPlayer.prepare(extractorMediaSource, false, false);
+            mSeekController.seekExactly(mPlayer, mCurrentWindowIndex, mCurrentPosition);
             mPlayer.setPlayWhenReady(mPlayWhenReady);
+        }
+    }
+
+    private void savePosition() {
+        if (mPlayer == null) {
+            return;
+        }
+        int windowIndex = mPlayer.getCurrentWindowIndex();
+        if (windowIndex < 0 || windowIndex >= mPlaylist.size()) {
+            return;
+        }
+        String uri = mPlaylist.get(windowIndex);
+        if (mPlayer.getPlaybackState() == Player.STATE_ENDED) {
+            mPositionStore.remove(uri);
         } else {
-            mPlayer.prepare(extractorMediaSource);
-            mPlayWhenReady = true;
-            mPlayer.setPlayWhenReady(true);
+            mPositionStore.put(uri, mPlayer.getCurrentPosition(), mPlayer.getPlayWhenReady());
+        }
+    }
+
+    private void savePositionPeriodically() {
+        savePosition();
+        mHandler.postDelayed(mSavePositionRunnable, POSITION_SAVE_INTERVAL_MS);
+    }
+
+    private MediaSource createMediaSource(String uri) {
+        DataSource.Factory cacheFactory = MediaCache.getInstance(mContext).getDataSourceFactory();
+        DataSource.Factory dataSourceFactory =
+                OfflineManager.getDataSourceFactory(mContext, uri, cacheFactory);
+        return new MediaSourceFactory(dataSourceFactory)
+                .createMediaSource(Uri.parse(uri), mOverrideExtensions.get(uri));
+    }
+
+    private void onPlayerRevoked(PlayerPool.Lease lease) {
+        if (lease == mLease) {
+            Log.d(LOG_TAG, "Player revoked by the pool");
+            releasePlayer();
         }
     }
 
@@ -127,156 +275,470 @@ public class PlayerInstance {
         @Override
         public void onPlay() {
             mPlayWhenReady = true;
-            mPlayer.setPlayWhenReady(true);
+            if (mPlayer != null) {
+                mPlayer.setPlayWhenReady(true);
+            }
         }
 
         @Override
         public void onPause() {
             mPlayWhenReady = false;
-            mPlayer.setPlayWhenReady(false);
+            if (mPlayer != null) {
+                mPlayer.setPlayWhenReady(false);
+            }
         }
 
         @Override
         public void onFastForward() {
-            mPlayer.seekTo(mPlayer.getCurrentPosition() + 5000);
+            if (mPlayer != null) {
+                mSeekController.seekBy(mPlayer, 5000);
+            }
         }
 
         @Override
         public void onRewind() {
-            mPlayer.seekTo(mPlayer.getCurrentPosition() - 5000);
+            if (mPlayer != null) {
+                mSeekController.seekBy(mPlayer, -5000);
+            }
         }
 
         @Override
         public void onSkipToPrevious() {
             mPlayWhenReady = false;
-            mPlayer.setPlayWhenReady(false);
-            mPlayer.seekTo(0);
+            if (mPlayer != null) {
+                mPlayer.setPlayWhenReady(false);
+                mSeekController.seekExactly(mPlayer, mPlayer.getCurrentWindowIndex(), 0);
+            }
         }
 
         @Override
         public void onStop() {
             this.onSkipToPrevious();
+            if (mInBackground) {
+                // Nothing on screen to come back to, so let go of the player entirely.
+                releasePlayer();
+            }
         }
     }
 
     private class ExoEventCallback implements Player.EventListener {
+
+        private int mWindowIndex = C.INDEX_UNSET;
+
         @Override
         public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
-            if (playbackState == Player.STATE_READY && playWhenReady) {
-                mStateBuilder.setState(PlaybackStateCompat.STATE_PLAYING,
-                        mPlayer.getCurrentPosition(), 1f);
-            } else if (playbackState == Player.STATE_READY) {
-                mStateBuilder.setState(PlaybackStateCompat.STATE_PAUSED,
-                        mPlayer.getCurrentPosition(), 1f);
+            mPlaybackSession.publish(PlayerInstance.this, playWhenReady, playbackState,
+                    mPlayer.getCurrentPosition());
+            if (mInBackground) {
+                PlaybackService.setPlaying(playWhenReady && playbackState != Player.STATE_ENDED);
             }
-            mMediaSession.setPlaybackState(mStateBuilder.build());
-            showNotification(mStateBuilder.build());
+            mHandler.removeCallbacks(mSavePositionRunnable);
+            if (playWhenReady && playbackState == Player.STATE_READY) {
+                // Only memory is touched here, the store batches the disk writes.
+                mHandler.postDelayed(mSavePositionRunnable, POSITION_SAVE_INTERVAL_MS);
+            } else if (playbackState == Player.STATE_READY || playbackState == Player.STATE_ENDED) {
+                savePosition();
+            }
+            if (playbackState == Player.STATE_READY) {
+                prepareCurrentItem();
+            }
+            mWindowIndex = mPlayer.getCurrentWindowIndex();
         }
-    }
 
-    private void showNotification(PlaybackStateCompat playbackState) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            createNotificationChannel();
+        @Override
+        public void onPlayerError(ExoPlaybackException error) {
+            if (error.type != ExoPlaybackException.TYPE_RENDERER
+                    || !(error.getRendererException()
+                    instanceof MediaCodecRenderer.DecoderInitializationException)) {
+                return;
+            }
+            String decoderName = ((MediaCodecRenderer.DecoderInitializationException)
+                    error.getRendererException()).decoderName;
+            if (decoderName == null || mDecoderRetries >= MAX_DECODER_RETRIES) {
+                return;
+            }
+            // The policy skips the failed decoder for a while, preparing again picks the next.
+            mDecoderRetries++;
+            DecoderPolicy.getInstance().reportInitFailure(decoderName);
+            mPlayer.prepare(mMediaSource, false, false);
         }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, NOTIFICATION_CHANNEL_ID);
-
-        int icon;
-        String playPause;
-        if (playbackState.getState() == PlaybackStateCompat.STATE_PLAYING) {
-            icon = R.drawable.exo_controls_pause;
-            playPause = "Pause";
-        } else {
-            icon = R.drawable.exo_controls_play;
-            playPause = "Play";
-        }
-
-        NotificationCompat.Action playPauseAction = new NotificationCompat.Action(
-                icon, playPause,
-                MediaButtonReceiver.buildMediaButtonPendingIntent(mContext,
-                        PlaybackStateCompat.ACTION_PLAY_PAUSE)
-        );
-
-        NotificationCompat.Action restartAction = new NotificationCompat.Action(
-                R.drawable.exo_controls_previous, "Restart",
-                MediaButtonReceiver.buildMediaButtonPendingIntent(mContext,
-                        PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS)
-        );
-
-        PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0,
-                new Intent(mContext, MainActivity.class), 0);
-
-        builder.setContentTitle("Title goes here")
-                .setContentText("Text goes here")
-                .setContentIntent(pendingIntent)
-                .setSmallIcon(R.drawable.exo_icon_play)
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .addAction(restartAction)
-                .addAction(playPauseAction)
-                .setDeleteIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(mContext,
-                        PlaybackStateCompat.ACTION_STOP))
-                .setStyle(new android.support.v4.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mMediaSession.getSessionToken())
-                        .setShowActionsInCompactView(0, 1));
-
-        mNotificationManager.notify(0, builder.build());
-    }
-
-    @RequiresApi(Build.VERSION_CODES.O)
-    private void createNotificationChannel() {
-        NotificationChannel mChannel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, "Video", NotificationManager.IMPORTANCE_LOW);
-        mChannel.setDescription("Video playback");
-        mChannel.setShowBadge(false);
-        mChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
-        mNotificationManager.createNotificationChannel(mChannel);
+        @Override
+        public void onPositionDiscontinuity(int reason) {
+            if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION
+                    && mWindowIndex >= 0 && mWindowIndex < mPlaylist.size()) {
+                // Finished items start from the top next time.
+                mPositionStore.remove(mPlaylist.get(mWindowIndex));
+            }
+            mWindowIndex = mPlayer.getCurrentWindowIndex();
+            prepareCurrentItem();
+        }
     }
 
     public static class MediaReceiver extends BroadcastReceiver {
 
         @Override
         public void onReceive(Context context, Intent intent) {
-            MediaButtonReceiver.handleIntent(mMediaSession, intent);
+            MediaSessionCompat mediaSession = PlaybackSession.peekMediaSession();
+            if (mediaSession != null) {
+                MediaButtonReceiver.handleIntent(mediaSession, intent);
+            }
+        }
+    }
+
+    /**
+     * Builds the sync index and starts generating seek bar previews for the current item once
+     * its duration is known, and points the scrub preview at it.
+     */
+    private void prepareCurrentItem() {
+        int windowIndex = mPlayer.getCurrentWindowIndex();
+        long durationMs = mPlayer.getDuration();
+        if (windowIndex < 0 || windowIndex >= mPlaylist.size() || durationMs == C.TIME_UNSET
+                || mPlayer.isCurrentWindowDynamic()) {
+            return;
+        }
+        String url = mPlaylist.get(windowIndex);
+        mSeekController.prepare(url);
+        TrickPlayCache trickPlayCache = TrickPlayCache.getInstance(mContext);
+        if (mTrickPlayUrl != null && !mTrickPlayUrl.equals(url)) {
+            trickPlayCache.cancel(mTrickPlayUrl);
+        }
+        mTrickPlayUrl = url;
+        trickPlayCache.prepare(url, durationMs);
+        if (mScrubPreview != null) {
+            mScrubPreview.bind(url, durationMs);
+        }
+    }
+
+    private void clearTrickPlay(boolean cancel) {
+        if (cancel && mTrickPlayUrl != null) {
+            TrickPlayCache.getInstance(mContext).cancel(mTrickPlayUrl);
+        }
+        mTrickPlayUrl = null;
+        if (mScrubPreview != null) {
+            mScrubPreview.bind(null, C.TIME_UNSET);
         }
     }
 
+    private void saveState() {
+        mCurrentPosition = mPlayer.getCurrentPosition();
+        mCurrentWindowIndex = mPlayer.getCurrentWindowIndex();
+        mPlayWhenReady = mPlayer.getPlayWhenReady();
+        savePosition();
+    }
+
+    private Bundle buildStateBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(CURRENT_POSITION_KEY, mCurrentPosition);
+        bundle.putInt(CURRENT_WINDOW_KEY, mCurrentWindowIndex);
+        bundle.putBoolean(PLAY_WHEN_READY_KEY, mPlayWhenReady);
+        bundle.putStringArrayList(PLAYLIST_KEY, new ArrayList<>(mPlaylist));
+        return bundle;
+    }
+
     private void releasePlayer() {
-        mNotificationManager.cancelAll();
         if (mPlayer != null) {
-            mCurrentPosition = mPlayer.getCurrentPosition();
-            mCurrentWindowIndex = mPlayer.getCurrentWindowIndex();
-            mPlayWhenReady = mPlayer.getPlayWhenReady();
-            mPlayer.release();
+            if (mInBackground) {
+                // Out of the foreground first, or the notification can't be cancelled.
+                mInBackground = false;
+                PlaybackService.stop(mContext);
+            }
+            mPlaybackSession.cancel(this);
+            mHandler.removeCallbacks(mSavePositionRunnable);
+            saveState();
+            mPositionStore.flush();
+            clearTrickPlay(true);
+            mNetworkGovernor.removeListener(mGovernorListener);
+            mPlayer.removeListener(mEventCallback);
+            mPlayerView.setPlayer(null);
+            mLease.recycle();
+            mLease = null;
             mPlayer = null;
+            mTrackSelector = null;
+            mMediaSource = null;
+            if (sBackgroundInstance == this) {
+                // Closed already, nobody else will give up the session.
+                sBackgroundInstance = null;
+                mPlaybackSession.release(this);
+            }
+            MediaCache mediaCache = MediaCache.getInstance(mContext);
+            Log.d(LOG_TAG, "Media cache hits: " + mediaCache.getHitCount()
+                    + ", misses: " + mediaCache.getMissCount()
+                    + ", bytes saved: " + mediaCache.getBytesSaved());
         }
     }
 
+    /**
+     * Overrides the automatically selected buffer profile. Applies from the next time a
+     * player is created.
+     */
+    public void setBufferProfile(BufferProfile bufferProfile) {
+        mBufferProfile = bufferProfile;
+    }
+
+    /**
+     * Caps the video tracks the adaptive track selection may pick. The viewport size of the
+     * PlayerView and the caps of the current {@link NetworkGovernor.Mode} are applied on top
+     * of these. Takes effect immediately.
+     */
+    public void setVideoConstraints(int maxVideoBitrate, int maxVideoWidth, int maxVideoHeight) {
+        mMaxVideoBitrate = maxVideoBitrate;
+        mMaxVideoWidth = maxVideoWidth;
+        mMaxVideoHeight = maxVideoHeight;
+        applyTrackConstraints();
+    }
+
+    private void applyTrackConstraints() {
+        if (mTrackSelector == null) {
+            return;
+        }
+        NetworkGovernor.Mode mode = mNetworkGovernor.getMode();
+        DefaultTrackSelector.ParametersBuilder builder = mTrackSelector.buildUponParameters()
+                .setMaxVideoBitrate(Math.min(mMaxVideoBitrate, mode.maxVideoBitrate))
+                .setMaxVideoSize(Math.min(mMaxVideoWidth, mode.maxVideoWidth),
+                        Math.min(mMaxVideoHeight, mode.maxVideoHeight));
+        if (mPlayerView.getWidth() > 0 && mPlayerView.getHeight() > 0) {
+            builder.setViewportSize(mPlayerView.getWidth(), mPlayerView.getHeight(), false);
+        }
+        mTrackSelector.setParameters(builder);
+    }
+
     public void play(String uri) {
+        play(uri, null);
+    }
+
+    /**
+     * @param overrideExtension "m3u8", "mpd" etc. when the content type can't be inferred
+     *                          from the uri, or null.
+     */
+    public void play(String uri, @Nullable String overrideExtension) {
         if (TextUtils.isEmpty(uri)) {
             return;
         }
+        mOverrideExtensions.clear();
+        if (overrideExtension != null) {
+            mOverrideExtensions.put(uri, overrideExtension);
+        }
+        startPlaylist(Collections.singletonList(uri));
+    }
+
+    /**
+     * Plays the given uris back to back. A restored position and window index are kept unless
+     * a different playlist was playing before, in which case playback starts from the top.
+     * Extensions given for the items of a previous playlist are dropped.
+     */
+    public void play(List<String> uris) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        if (!mPlaylist.equals(uris)) {
+            mOverrideExtensions.clear();
+        }
+        startPlaylist(uris);
+    }
+
+    private void startPlaylist(List<String> uris) {
+        if (sBackgroundInstance != null && sBackgroundInstance != this) {
+            sBackgroundInstance.handOffFromBackground();
+        }
+        if (mInBackground && mPlaylist.equals(uris)) {
+            returnToForeground();
+            return;
+        }
         if (mPlayer != null) {
             releasePlayer();
         }
-        mVideoUri = uri;
+        if (!mPlaylist.equals(uris)) {
+            if (!mPlaylist.isEmpty()) {
+                mCurrentPosition = C.TIME_UNSET;
+                mCurrentWindowIndex = C.INDEX_UNSET;
+            }
+            mPlaylist.clear();
+            mPlaylist.addAll(uris);
+        }
         initialisePlayer();
     }
 
+    /**
+     * Resumes the playlist this instance was restored with, either from the Bundle passed
+     * to the constructor or from a previous call to play().
+     *
+     * @return false if there is nothing to resume.
+     */
+    public boolean resume() {
+        if (mPlaylist.isEmpty()) {
+            return false;
+        }
+        play(new ArrayList<>(mPlaylist));
+        return true;
+    }
+
+    public void addToPlaylist(String uri) {
+        addToPlaylist(mPlaylist.size(), uri);
+    }
+
+    public void addToPlaylist(int index, String uri) {
+        addToPlaylist(index, uri, null);
+    }
+
+    /**
+     * @param overrideExtension "m3u8", "mpd" etc. when the content type can't be inferred
+     *                          from the uri, or null.
+     */
+    public void addToPlaylist(int index, String uri, @Nullable String overrideExtension) {
+        if (overrideExtension != null) {
+            mOverrideExtensions.put(uri, overrideExtension);
+        } else {
+            mOverrideExtensions.remove(uri);
+        }
+        mPlaylist.add(index, uri);
+        if (mMediaSource != null) {
+            mMediaSource.addMediaSource(index, createMediaSource(uri));
+        }
+    }
+
+    public void removeFromPlaylist(int index) {
+        String uri = mPlaylist.remove(index);
+        if (!mPlaylist.contains(uri)) {
+            mOverrideExtensions.remove(uri);
+        }
+        if (mMediaSource != null) {
+            mMediaSource.removeMediaSource(index);
+        }
+    }
+
+    public void moveInPlaylist(int fromIndex, int toIndex) {
+        mPlaylist.add(toIndex, mPlaylist.remove(fromIndex));
+        if (mMediaSource != null) {
+            mMediaSource.moveMediaSource(fromIndex, toIndex);
+        }
+    }
+
+    public List<String> getPlaylist() {
+        return Collections.unmodifiableList(mPlaylist);
+    }
+
     public void seek(long position, int window) {
         mCurrentPosition = position;
         mCurrentWindowIndex = window;
-        mPlayer.seekTo(mCurrentWindowIndex, mCurrentPosition);
+        if (mPlayer == null) {
+            return;
+        }
+        // A player handed back from another screen is already here, don't throw its buffer away.
+        if (mPlayer.getCurrentWindowIndex() == window
+                && Math.abs(mPlayer.getCurrentPosition() - position) < SEEK_TOLERANCE_MS) {
+            return;
+        }
+        // Restoring a position, so no snapping: that is for fast forward, rewind and scrubbing.
+        mSeekController.seekExactly(mPlayer, mCurrentWindowIndex, mCurrentPosition);
+    }
+
+    /**
+     * Sets how fast forward, rewind and time bar seeks resolve, see {@link SeekMode}. Defaults
+     * to {@link SeekMode#SYNC}. {@link #seek(long, int)} is always exact.
+     */
+    public void setSeekMode(SeekMode seekMode) {
+        mSeekController.setSeekMode(seekMode);
+    }
+
+    /**
+     * Keeps audio playing while no screen shows the player, e.g. from onStop. The surface is
+     * detached and the video renderer disabled, which releases the video decoder, and a
+     * foreground service keeps the process alive. The next play() or resume() of the same
+     * playlist brings video back without preparing again. Playback carries on after
+     * {@link #close()}, until it is stopped from the notification or another instance plays.
+     *
+     * @return false if nothing is playing; call {@link #stop()} instead.
+     */
+    public boolean moveToBackground() {
+        if (mPlayer == null || !mPlayer.getPlayWhenReady()
+                || mPlayer.getPlaybackState() == Player.STATE_IDLE
+                || mPlayer.getPlaybackState() == Player.STATE_ENDED) {
+            return false;
+        }
+        Log.d(LOG_TAG, "Moving playback to the background");
+        mInBackground = true;
+        mPlayerView.setPlayer(null);
+        // Playing on without the view, its going away must not take the player back.
+        mLease.transfer(null, this::onPlayerRevoked);
+        setVideoRendererDisabled(true);
+        PlaybackService.start(mContext);
+        return true;
+    }
+
+    private void returnToForeground() {
+        Log.d(LOG_TAG, "Bringing playback back to the foreground");
+        mInBackground = false;
+        PlaybackService.stop(mContext);
+        setVideoRendererDisabled(false);
+        mPlayerView.setPlayer(mPlayer);
+        mLease.transfer(mPlayerView, this::onPlayerRevoked);
+        mPlaybackSession.claim(this, mSessionCallback);
+    }
+
+    /**
+     * Gives the player of an instance that was closed in the background to the instance about
+     * to play, which picks it up if it plays the same playlist.
+     */
+    private void handOffFromBackground() {
+        Log.d(LOG_TAG, "Handing background playback to a new screen");
+        sBackgroundInstance = null;
+        mInBackground = false;
+        PlaybackService.stop(mContext);
+        setVideoRendererDisabled(false);
+        handOff();
+    }
+
+    private void setVideoRendererDisabled(boolean disabled) {
+        DefaultTrackSelector.ParametersBuilder builder = mTrackSelector.buildUponParameters();
+        for (int i = 0; i < mPlayer.getRendererCount(); i++) {
+            if (mPlayer.getRendererType(i) == C.TRACK_TYPE_VIDEO) {
+                builder.setRendererDisabled(i, disabled);
+            }
+        }
+        mTrackSelector.setParameters(builder);
     }
 
     public Bundle stop() {
         releasePlayer();
-        Bundle bundle = new Bundle();
-        bundle.putLong(CURRENT_POSITION_KEY, mCurrentPosition);
-        bundle.putInt(CURRENT_WINDOW_KEY, mCurrentWindowIndex);
-        bundle.putBoolean(PLAY_WHEN_READY_KEY, mPlayWhenReady);
-        return bundle;
+        return buildStateBundle();
+    }
+
+    /**
+     * Detaches the player from this instance without releasing it, so that the next
+     * PlayerInstance playing the same uri can pick it up with its buffer intact.
+     */
+    public Bundle handOff() {
+        if (mPlayer != null) {
+            saveState();
+            mHandler.removeCallbacks(mSavePositionRunnable);
+            // The next screen picks up the same item, so generation carries on.
+            clearTrickPlay(false);
+            mNetworkGovernor.removeListener(mGovernorListener);
+            mPlayer.removeListener(mEventCallback);
+            mPlayerView.setPlayer(null);
+            PlayerHolder.getInstance().hold(mLease, mMediaSource, mPlaylist);
+            mLease = null;
+            mPlayer = null;
+            mTrackSelector = null;
+            mMediaSource = null;
+        }
+        return buildStateBundle();
     }
 
+    /**
+     * Call when the screen goes away for good. Playback moved to the background keeps going,
+     * owned by the session and the service, and the next instance to play takes it over.
+     */
     public void close() {
-        mMediaSession.setActive(false);
+        if (mInBackground) {
+            Log.d(LOG_TAG, "Closed while playing in the background");
+            mContext = mContext.getApplicationContext();
+            sBackgroundInstance = this;
+            return;
+        }
+        if (mPlaybackSession != null) {
+            mPlaybackSession.release(this);
+        }
     }
 }
@@ -0,0 +1,287 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.View;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.audio.AudioAttributes;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Caps how many players, and with them hardware decoders, exist at once. Players are leased
+ * to the views showing video and recycled when those go away; a stopped player holds no
+ * codecs, so recycled players are kept around for the next lease. A player is taken back as
+ * soon as its view is detached from the window, and when every player is in use, the least
+ * recently leased one on a view that is no longer shown is taken back. Must only be used
+ * from the main thread.
+ */
+public class PlayerPool {
+
+    private static final String LOG_TAG = PlayerPool.class.getSimpleName();
+    private static final int DEFAULT_MAX_PLAYERS = 3;
+
+    private static PlayerPool sInstance;
+    private static int sMaxPlayers = DEFAULT_MAX_PLAYERS;
+
+    private final Context mContext;
+    private final int mMaxPlayers;
+    // Least recently leased first.
+    private final List<Lease> mLeases = new ArrayList<>();
+    private final List<PooledPlayer> mIdle = new ArrayList<>();
+
+    public interface OnRevokedListener {
+        /**
+         * The player is being taken away. Detach it from the view and hand the lease back
+         * with {@link #recycle(Lease)}.
+         */
+        void onPlayerRevoked(Lease lease);
+    }
+
+    private PlayerPool(Context context, int maxPlayers) {
+        mContext = context;
+        mMaxPlayers = Math.max(1, Math.min(maxPlayers, getMaxVideoDecoders()));
+        Log.d(LOG_TAG, "Pooling at most " + mMaxPlayers + " players");
+    }
+
+    public static PlayerPool getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlayerPool(context.getApplicationContext(), sMaxPlayers);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets how many players may exist at once. Only takes effect if called before the first
+     * call to {@link #getInstance(Context)}, and is capped by the decoder instances the device
+     * supports.
+     */
+    public static void setMaxPlayers(int maxPlayers) {
+        if (sInstance != null) {
+            Log.w(LOG_TAG, "Player pool already created, ignoring new size");
+            return;
+        }
+        sMaxPlayers = maxPlayers;
+    }
+
+    private static int getMaxVideoDecoders() {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo codecInfo : codecList.getCodecInfos()) {
+            if (codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(MediaFormat.MIMETYPE_VIDEO_AVC)) {
+                    return codecInfo.getCapabilitiesForType(type).getMaxSupportedInstances();
+                }
+            }
+        }
+        return DEFAULT_MAX_PLAYERS;
+    }
+
+    /**
+     * Leases a player for the given view. Reuses an idle player with the same buffer profile
+     * if there is one, creates one while under the cap, and otherwise revokes a lease. The
+     * revoked player is only reused if it has the same buffer profile too.
+     *
+     * @param view the view the player will render to, used to prefer revoking players that
+     *             are no longer on screen. May be null.
+     */
+    Lease acquire(BufferProfile bufferProfile, @Nullable View view, OnRevokedListener listener) {
+        PooledPlayer pooledPlayer = takeIdle(bufferProfile);
+        if (pooledPlayer == null && mLeases.size() + mIdle.size() >= mMaxPlayers) {
+            if (!mIdle.isEmpty()) {
+                mIdle.remove(0).player.release();
+            } else {
+                revokeOne();
+                pooledPlayer = takeIdle(bufferProfile);
+                if (pooledPlayer == null && !mIdle.isEmpty()) {
+                    mIdle.remove(0).player.release();
+                }
+            }
+        }
+        if (pooledPlayer == null) {
+            pooledPlayer = createPlayer(bufferProfile);
+        }
+        Lease lease = new Lease(this, pooledPlayer, view, listener);
+        mLeases.add(lease);
+        Log.d(LOG_TAG, "Leased a player, " + mLeases.size() + " in use, " + mIdle.size() + " idle");
+        return lease;
+    }
+
+    /**
+     * Returns a leased player to the pool. The player is stopped, which releases its codecs.
+     * Calling this for a lease that was already recycled does nothing.
+     */
+    void recycle(Lease lease) {
+        if (!mLeases.remove(lease)) {
+            return;
+        }
+        lease.setView(null);
+        PooledPlayer pooledPlayer = lease.mPooledPlayer;
+        PlaybackMetrics.getInstance().endSession(pooledPlayer.player);
+        pooledPlayer.player.stop(true);
+        pooledPlayer.player.setPlayWhenReady(false);
+        pooledPlayer.player.setSeekParameters(null);
+        pooledPlayer.trackSelector.setParameters(DefaultTrackSelector.Parameters.DEFAULT);
+        if (mLeases.size() + mIdle.size() < mMaxPlayers) {
+            mIdle.add(pooledPlayer);
+        } else {
+            pooledPlayer.player.release();
+        }
+    }
+
+    /**
+     * Releases all idle players, e.g. when the system is low on memory.
+     */
+    public void trim() {
+        for (PooledPlayer pooledPlayer : mIdle) {
+            pooledPlayer.player.release();
+        }
+        mIdle.clear();
+    }
+
+    public int getLiveCount() {
+        return mLeases.size() + mIdle.size();
+    }
+
+    @Nullable
+    private PooledPlayer takeIdle(BufferProfile bufferProfile) {
+        Iterator<PooledPlayer> iterator = mIdle.iterator();
+        while (iterator.hasNext()) {
+            PooledPlayer pooledPlayer = iterator.next();
+            if (pooledPlayer.bufferProfile == bufferProfile) {
+                iterator.remove();
+                return pooledPlayer;
+            }
+        }
+        return null;
+    }
+
+    private void revokeOne() {
+        Lease victim = mLeases.get(0);
+        for (Lease lease : mLeases) {
+            if (lease.mView == null || !lease.mView.isShown()) {
+                victim = lease;
+                break;
+            }
+        }
+        Log.d(LOG_TAG, "All players in use, revoking the least recently leased one");
+        revoke(victim);
+    }
+
+    private void revoke(Lease lease) {
+        lease.mListener.onPlayerRevoked(lease);
+        // In case the owner didn't hand it back itself.
+        recycle(lease);
+    }
+
+    private PooledPlayer createPlayer(BufferProfile bufferProfile) {
+        TraceCompat.beginSection("PlayerPool.createPlayer");
+        DefaultTrackSelector trackSelector =
+                new DefaultTrackSelector(new AdaptiveTrackSelection.Factory());
+        NetworkGovernor networkGovernor = NetworkGovernor.getInstance(mContext);
+        SimpleExoPlayer player = ExoPlayerFactory.newSimpleInstance(mContext,
+                new PolicyRenderersFactory(mContext),
+                trackSelector,
+                new GovernedLoadControl(bufferProfile.createLoadControl(), networkGovernor,
+                        bufferProfile.minBufferMs),
+                null,
+                SharedBandwidthMeter.getInstance(mContext));
+        networkGovernor.track(player);
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setUsage(C.USAGE_MEDIA)
+                .setContentType(C.CONTENT_TYPE_SPEECH)
+                .build();
+        player.setAudioAttributes(audioAttributes, true);
+        TraceCompat.endSection();
+        return new PooledPlayer(player, trackSelector, bufferProfile);
+    }
+
+    private static class PooledPlayer {
+
+        final SimpleExoPlayer player;
+        final DefaultTrackSelector trackSelector;
+        final BufferProfile bufferProfile;
+
+        PooledPlayer(SimpleExoPlayer player, DefaultTrackSelector trackSelector,
+                     BufferProfile bufferProfile) {
+            this.player = player;
+            this.trackSelector = trackSelector;
+            this.bufferProfile = bufferProfile;
+        }
+    }
+
+    /**
+     * A player handed out by the pool, valid until it is recycled or revoked.
+     */
+    public static class Lease {
+
+        private final PlayerPool mPool;
+        private final PooledPlayer mPooledPlayer;
+        private final View.OnAttachStateChangeListener mAttachListener =
+                new View.OnAttachStateChangeListener() {
+                    @Override
+                    public void onViewAttachedToWindow(View view) {
+                    }
+
+                    @Override
+                    public void onViewDetachedFromWindow(View view) {
+                        Log.d(LOG_TAG, "View detached, taking its player back");
+                        mPool.revoke(Lease.this);
+                    }
+                };
+        private View mView;
+        private OnRevokedListener mListener;
+
+        Lease(PlayerPool pool, PooledPlayer pooledPlayer, @Nullable View view,
+              OnRevokedListener listener) {
+            mPool = pool;
+            mPooledPlayer = pooledPlayer;
+            mListener = listener;
+            setView(view);
+        }
+
+        SimpleExoPlayer getPlayer() {
+            return mPooledPlayer.player;
+        }
+
+        DefaultTrackSelector getTrackSelector() {
+            return mPooledPlayer.trackSelector;
+        }
+
+        void recycle() {
+            mPool.recycle(this);
+        }
+
+        /**
+         * Moves the lease to a new owner, e.g. when a player is handed to another screen.
+         */
+        void transfer(@Nullable View view, OnRevokedListener listener) {
+            setView(view);
+            mListener = listener;
+        }
+
+        private void setView(@Nullable View view) {
+            if (mView != null) {
+                mView.removeOnAttachStateChangeListener(mAttachListener);
+            }
+            mView = view;
+            if (view != null) {
+                view.addOnAttachStateChangeListener(mAttachListener);
+            }
+        }
+    }
+}
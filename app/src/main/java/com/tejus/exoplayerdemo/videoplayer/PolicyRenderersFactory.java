@@ -0,0 +1,55 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.support.annotation.Nullable;
+
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.audio.AudioCapabilities;
+import com.google.android.exoplayer2.audio.AudioRendererEventListener;
+import com.google.android.exoplayer2.audio.MediaCodecAudioRenderer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.metadata.MetadataOutput;
+import com.google.android.exoplayer2.metadata.MetadataRenderer;
+import com.google.android.exoplayer2.text.TextOutput;
+import com.google.android.exoplayer2.text.TextRenderer;
+import com.google.android.exoplayer2.video.MediaCodecVideoRenderer;
+import com.google.android.exoplayer2.video.VideoRendererEventListener;
+
+/**
+ * The renderers of DefaultRenderersFactory without extensions, with decoders picked by the
+ * {@link DecoderPolicy}.
+ */
+class PolicyRenderersFactory implements RenderersFactory {
+
+    private static final long ALLOWED_VIDEO_JOINING_TIME_MS = 5000;
+    private static final int MAX_DROPPED_VIDEO_FRAME_COUNT_TO_NOTIFY = 50;
+
+    private final Context mContext;
+
+    PolicyRenderersFactory(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public Renderer[] createRenderers(Handler eventHandler,
+                                      VideoRendererEventListener videoRendererEventListener,
+                                      AudioRendererEventListener audioRendererEventListener,
+                                      TextOutput textRendererOutput,
+                                      MetadataOutput metadataRendererOutput,
+                                      @Nullable DrmSessionManager<FrameworkMediaCrypto> drmSessionManager) {
+        DecoderPolicy decoderPolicy = DecoderPolicy.getInstance();
+        return new Renderer[] {
+                new MediaCodecVideoRenderer(mContext, decoderPolicy, ALLOWED_VIDEO_JOINING_TIME_MS,
+                        drmSessionManager, false, eventHandler, videoRendererEventListener,
+                        MAX_DROPPED_VIDEO_FRAME_COUNT_TO_NOTIFY),
+                new MediaCodecAudioRenderer(mContext, decoderPolicy, drmSessionManager, false,
+                        eventHandler, audioRendererEventListener,
+                        AudioCapabilities.getCapabilities(mContext)),
+                new TextRenderer(textRendererOutput, eventHandler.getLooper()),
+                new MetadataRenderer(metadataRendererOutput, eventHandler.getLooper())
+        };
+    }
+}
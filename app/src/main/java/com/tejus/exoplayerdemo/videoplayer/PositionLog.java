@@ -0,0 +1,85 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The on-disk format of {@link PositionStore}: a header followed by one record per update,
+ * where a later record for a url replaces an earlier one and a negative position removes it.
+ */
+public final class PositionLog {
+
+    private static final int MAGIC = 0x50534c31;
+    static final long REMOVED = -1;
+
+    public static class Position {
+        public final String url;
+        public final long positionMs;
+        public final boolean playWhenReady;
+
+        Position(String url, long positionMs, boolean playWhenReady) {
+            this.url = url;
+            this.positionMs = positionMs;
+            this.playWhenReady = playWhenReady;
+        }
+
+        boolean isRemoval() {
+            return positionMs == REMOVED;
+        }
+    }
+
+    private PositionLog() {
+    }
+
+    static void writeHeader(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+    }
+
+    static void writeRecords(DataOutputStream output, List<Position> positions)
+            throws IOException {
+        for (Position position : positions) {
+            output.writeUTF(position.url);
+            output.writeLong(position.positionMs);
+            output.writeBoolean(position.playWhenReady);
+        }
+    }
+
+    /**
+     * Replays a whole log into positions, most recently updated last.
+     *
+     * @return the number of records read.
+     * @throws EOFException if the last record was cut short, anywhere after its first byte.
+     *                      Everything before it has been replayed.
+     */
+    static int read(DataInputStream input, Map<String, Position> positions) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a position log");
+        }
+        // Peeking one byte tells a clean end of the log from a record torn inside its url.
+        PushbackInputStream pushback = new PushbackInputStream(input, 1);
+        DataInputStream recordInput = new DataInputStream(pushback);
+        int records = 0;
+        while (true) {
+            int next = pushback.read();
+            if (next < 0) {
+                return records;
+            }
+            pushback.unread(next);
+            String url = recordInput.readUTF();
+            apply(positions, new Position(url, recordInput.readLong(), recordInput.readBoolean()));
+            records++;
+        }
+    }
+
+    static void apply(Map<String, Position> positions, Position position) {
+        positions.remove(position.url);
+        if (!position.isRemoval()) {
+            positions.put(position.url, position);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.tejus.exoplayerdemo.AppExecutors;
+import com.tejus.exoplayerdemo.videoplayer.PositionLog.Position;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers where playback of each url stopped, across process restarts. Updates are kept in
+ * memory and appended to a small log file in batches on the disk thread. The log is rewritten
+ * with only the live entries once it has grown to about twice their number.
+ */
+public class PositionStore {
+
+    private static final String LOG_TAG = PositionStore.class.getSimpleName();
+    private static final String FILE_NAME = "positions.log";
+    private static final long FLUSH_DELAY_MS = 5000;
+    private static final int MAX_ENTRIES = 500;
+    private static final int COMPACTION_SLACK = 64;
+
+    private static final Object LOCK = new Object();
+    private static volatile PositionStore sInstance;
+
+    private final AtomicFile mFile;
+    private final File mBaseFile;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = this::scheduleWrite;
+    // Most recently updated last.
+    private final LinkedHashMap<String, Position> mPositions = new LinkedHashMap<>();
+    private final List<Position> mPending = new ArrayList<>();
+    private final List<Runnable> mLoadCallbacks = new ArrayList<>();
+    private boolean mLoaded;
+    private boolean mFlushPosted;
+    private int mRecordCount;
+    private boolean mNeedsCompaction;
+
+    private PositionStore(File file) {
+        mBaseFile = file;
+        mFile = new AtomicFile(file);
+        AppExecutors.getInstance().diskIO().execute(this::load);
+    }
+
+    /**
+     * Returns the shared store. The first call starts loading the log on the disk thread.
+     */
+    public static PositionStore getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new PositionStore(
+                            new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the saved position for the url, or null. Only positions put in this process are
+     * known until the log is loaded, see {@link #whenLoaded(Runnable)}.
+     */
+    public synchronized Position get(String url) {
+        return mPositions.get(url);
+    }
+
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Runs callback on the main thread once the log is loaded, right away if it already is.
+     */
+    public void whenLoaded(Runnable callback) {
+        synchronized (this) {
+            if (!mLoaded) {
+                mLoadCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    public void put(String url, long positionMs, boolean playWhenReady) {
+        update(new Position(url, Math.max(0, positionMs), playWhenReady));
+    }
+
+    public void remove(String url) {
+        update(new Position(url, PositionLog.REMOVED, false));
+    }
+
+    private void update(Position position) {
+        boolean postFlush;
+        synchronized (this) {
+            PositionLog.apply(mPositions, position);
+            trimToSize();
+            mPending.add(position);
+            postFlush = !mFlushPosted;
+            mFlushPosted = true;
+        }
+        if (postFlush) {
+            mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes pending updates now instead of waiting for the next batch.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        scheduleWrite();
+    }
+
+    private void trimToSize() {
+        Iterator<String> iterator = mPositions.keySet().iterator();
+        while (mPositions.size() > MAX_ENTRIES && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mNeedsCompaction = true;
+        }
+    }
+
+    private void scheduleWrite() {
+        synchronized (this) {
+            if (!mFlushPosted) {
+                return;
+            }
+            mFlushPosted = false;
+        }
+        AppExecutors.getInstance().diskIO().execute(this::write);
+    }
+
+    private void load() {
+        int goodRecords = 0;
+        boolean corrupt = false;
+        Map<String, Position> loaded = new LinkedHashMap<>();
+        try (InputStream inputStream = mFile.openRead()) {
+            goodRecords = PositionLog.read(
+                    new DataInputStream(new BufferedInputStream(inputStream)), loaded);
+        } catch (FileNotFoundException e) {
+            Log.d(LOG_TAG, "No positions saved yet");
+        } catch (IOException e) {
+            // Most likely a record cut short by process death. It is compacted away below,
+            // before anything gets appended behind it.
+            Log.w(LOG_TAG, "Position log damaged: " + e.getMessage());
+            corrupt = true;
+        }
+        List<Runnable> callbacks;
+        synchronized (this) {
+            // Updates made while loading are newer than anything on disk. They are all still
+            // pending, since writes are queued behind the load on the same thread.
+            mPositions.clear();
+            mPositions.putAll(loaded);
+            for (Position pending : mPending) {
+                PositionLog.apply(mPositions, pending);
+            }
+            trimToSize();
+            mRecordCount = goodRecords;
+            mNeedsCompaction |= corrupt;
+            mLoaded = true;
+            callbacks = new ArrayList<>(mLoadCallbacks);
+            mLoadCallbacks.clear();
+        }
+        Log.d(LOG_TAG, "Loaded " + loaded.size() + " positions from " + goodRecords + " records");
+        if (corrupt) {
+            write();
+        }
+        for (Runnable callback : callbacks) {
+            mHandler.post(callback);
+        }
+    }
+
+    private void write() {
+        List<Position> batch;
+        boolean compact;
+        synchronized (this) {
+            batch = new ArrayList<>(mPending);
+            mPending.clear();
+            compact = mNeedsCompaction
+                    || mRecordCount + batch.size() > 2 * mPositions.size() + COMPACTION_SLACK;
+            if (compact) {
+                batch = new ArrayList<>(mPositions.values());
+                mNeedsCompaction = false;
+            }
+        }
+        try {
+            if (compact || !mBaseFile.exists()) {
+                rewrite(batch);
+                mRecordCount = batch.size();
+            } else if (!batch.isEmpty()) {
+                append(batch);
+                mRecordCount += batch.size();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Exception caught in write: " + e.getMessage());
+            synchronized (this) {
+                mNeedsCompaction = true;
+            }
+        }
+    }
+
+    private void rewrite(List<Position> positions) throws IOException {
+        OutputStream outputStream = mFile.startWrite();
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+            PositionLog.writeHeader(output);
+            PositionLog.writeRecords(output, positions);
+            output.flush();
+            mFile.endWrite(outputStream);
+        } catch (IOException e) {
+            outputStream.close();
+            throw e;
+        }
+        Log.d(LOG_TAG, "Compacted positions to " + positions.size() + " records");
+    }
+
+    private void append(List<Position> positions) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(mBaseFile, true);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+            PositionLog.writeRecords(output, positions);
+            output.flush();
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ui.PlayerView;
+import com.google.android.exoplayer2.ui.TimeBar;
+import com.tejus.exoplayerdemo.R;
+
+/**
+ * Shows the {@link TrickPlayCache} frame for the scrub position above the time bar of a
+ * PlayerView. Frames are drawn straight from the sprite sheet, so scrubbing allocates no
+ * bitmaps and makes no requests; positions whose sheet is not in memory yet show the last
+ * frame until it is. Must only be used from the main thread.
+ */
+class ScrubPreview implements TimeBar.OnScrubListener {
+
+    private final TrickPlayCache mTrickPlayCache;
+    private final View mTimeBarView;
+    private final ImageView mPreviewView;
+    private final SpriteDrawable mDrawable = new SpriteDrawable();
+    private String mUrl;
+    private long mDurationMs = C.TIME_UNSET;
+    private boolean mScrubbing;
+
+    private ScrubPreview(Context context, TimeBar timeBar, View timeBarView, ImageView previewView) {
+        mTrickPlayCache = TrickPlayCache.getInstance(context);
+        mTimeBarView = timeBarView;
+        mPreviewView = previewView;
+        mPreviewView.setImageDrawable(mDrawable);
+        timeBar.addListener(this);
+    }
+
+    /**
+     * Returns null if the controller layout of the PlayerView has no preview view.
+     */
+    @Nullable
+    static ScrubPreview attach(Context context, PlayerView playerView) {
+        View timeBarView = playerView.findViewById(R.id.exo_progress);
+        View previewView = playerView.findViewById(R.id.exo_scrub_preview);
+        if (!(timeBarView instanceof TimeBar) || !(previewView instanceof ImageView)) {
+            return null;
+        }
+        return new ScrubPreview(context, (TimeBar) timeBarView, timeBarView, (ImageView) previewView);
+    }
+
+    /**
+     * Sets the item the time bar currently shows, or null if there is none.
+     */
+    void bind(@Nullable String url, long durationMs) {
+        if (url == null || !url.equals(mUrl)) {
+            mDrawable.setFrame(null);
+        }
+        mUrl = url;
+        mDurationMs = durationMs;
+        if (url == null) {
+            hide();
+        }
+    }
+
+    @Override
+    public void onScrubStart(TimeBar timeBar, long position) {
+        mScrubbing = true;
+        update(position);
+    }
+
+    @Override
+    public void onScrubMove(TimeBar timeBar, long position) {
+        update(position);
+    }
+
+    @Override
+    public void onScrubStop(TimeBar timeBar, long position, boolean canceled) {
+        mScrubbing = false;
+        hide();
+    }
+
+    private void update(long positionMs) {
+        if (!mScrubbing || mUrl == null || mDurationMs == C.TIME_UNSET || mDurationMs <= 0) {
+            return;
+        }
+        TrickPlayCache.Frame frame = mTrickPlayCache.getFrame(mUrl, positionMs);
+        if (frame != null) {
+            mDrawable.setFrame(frame);
+            matchAspectRatio(frame);
+        }
+        if (!mDrawable.hasFrame()) {
+            return;
+        }
+        mPreviewView.setVisibility(View.VISIBLE);
+        View parent = (View) mPreviewView.getParent();
+        float fraction = Math.min(1f, (float) positionMs / mDurationMs);
+        float centerX = mTimeBarView.getLeft() + fraction * mTimeBarView.getWidth();
+        float maxX = Math.max(0, parent.getWidth() - mPreviewView.getWidth());
+        mPreviewView.setTranslationX(
+                Math.max(0, Math.min(maxX, centerX - mPreviewView.getWidth() / 2f)));
+    }
+
+    private void matchAspectRatio(TrickPlayCache.Frame frame) {
+        ViewGroup.LayoutParams layoutParams = mPreviewView.getLayoutParams();
+        int height = layoutParams.width * frame.source.height() / frame.source.width();
+        if (layoutParams.width > 0 && layoutParams.height != height) {
+            layoutParams.height = height;
+            mPreviewView.setLayoutParams(layoutParams);
+        }
+    }
+
+    private void hide() {
+        mPreviewView.setVisibility(View.GONE);
+    }
+
+    /**
+     * Draws one cell of a sprite sheet scaled to its bounds.
+     */
+    private static class SpriteDrawable extends Drawable {
+
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private TrickPlayCache.Frame mFrame;
+
+        void setFrame(@Nullable TrickPlayCache.Frame frame) {
+            mFrame = frame;
+            invalidateSelf();
+        }
+
+        boolean hasFrame() {
+            return mFrame != null;
+        }
+
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            if (mFrame != null && !mFrame.sheet.isRecycled()) {
+                canvas.drawBitmap(mFrame.sheet, mFrame.source, getBounds(), mPaint);
+            }
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(@Nullable ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.OPAQUE;
+        }
+    }
+}
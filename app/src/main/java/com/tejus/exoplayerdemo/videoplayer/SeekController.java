@@ -0,0 +1,136 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultControlDispatcher;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves every seek of a {@link PlayerInstance}, whether it comes from the playback
+ * controls, the time bar, the media session or the app, according to the {@link SeekMode}.
+ * Sync seeks are snapped with the {@link SyncIndex} when it is built, which also lets a seek
+ * that would land where the player already is be dropped. Until then the player snaps with
+ * its own index, within the same distance. Must only be used from the main thread.
+ */
+class SeekController extends DefaultControlDispatcher {
+
+    private static final String LOG_TAG = SeekController.class.getSimpleName();
+    private static final long MAX_SNAP_DISTANCE_MS = 3000;
+    private static final long MIN_PROGRESS_MS = 500;
+
+    private final SyncIndex mSyncIndex;
+    private final List<String> mPlaylist;
+    private SeekMode mSeekMode = SeekMode.SYNC;
+
+    SeekController(Context context, List<String> playlist) {
+        mSyncIndex = SyncIndex.getInstance(context);
+        mPlaylist = playlist;
+    }
+
+    void setSeekMode(SeekMode seekMode) {
+        mSeekMode = seekMode;
+    }
+
+    /**
+     * Builds the sync index of url ahead of the first seek.
+     */
+    void prepare(String url) {
+        if (mSeekMode == SeekMode.SYNC) {
+            mSyncIndex.request(url);
+        }
+    }
+
+    @Override
+    public boolean dispatchSeekTo(Player player, int windowIndex, long positionMs) {
+        int direction = windowIndex == player.getCurrentWindowIndex()
+                ? Long.signum(positionMs - player.getCurrentPosition()) : 0;
+        seekTo((SimpleExoPlayer) player, windowIndex, positionMs, direction);
+        return true;
+    }
+
+    void seekBy(SimpleExoPlayer player, long offsetMs) {
+        seekTo(player, player.getCurrentWindowIndex(),
+                Math.max(0, player.getCurrentPosition() + offsetMs), Long.signum(offsetMs));
+    }
+
+    /**
+     * @param direction 1 to only snap forward of the current position, -1 to only snap
+     *                  behind it, 0 to snap to the closest sync frame.
+     */
+    void seekTo(SimpleExoPlayer player, int windowIndex, long positionMs, int direction) {
+        if (mSeekMode == SeekMode.EXACT || positionMs == C.TIME_UNSET
+                || windowIndex < 0 || windowIndex >= mPlaylist.size()) {
+            seekExactly(player, windowIndex, positionMs);
+            return;
+        }
+        long[] syncTimesUs = mSyncIndex.get(mPlaylist.get(windowIndex));
+        if (syncTimesUs == null) {
+            mSyncIndex.request(mPlaylist.get(windowIndex));
+            long toleranceUs = C.msToUs(MAX_SNAP_DISTANCE_MS);
+            player.setSeekParameters(new SeekParameters(direction > 0 ? 0 : toleranceUs,
+                    direction < 0 ? 0 : toleranceUs));
+            PlaybackMetrics.getInstance().tagNextSeek(player, true);
+            player.seekTo(windowIndex, positionMs);
+            return;
+        }
+        boolean sameWindow = windowIndex == player.getCurrentWindowIndex();
+        long currentMs = sameWindow ? player.getCurrentPosition() : C.TIME_UNSET;
+        long snappedMs = snap(syncTimesUs, positionMs, currentMs, direction);
+        if (snappedMs == C.TIME_UNSET) {
+            seekExactly(player, windowIndex, positionMs);
+            return;
+        }
+        if (snappedMs == currentMs) {
+            Log.d(LOG_TAG, "Already at sync frame " + snappedMs + ", dropping seek");
+            return;
+        }
+        // The target is a sync frame, so an exact seek to it decodes nothing extra.
+        player.setSeekParameters(SeekParameters.EXACT);
+        PlaybackMetrics.getInstance().tagNextSeek(player, true);
+        player.seekTo(windowIndex, snappedMs);
+    }
+
+    /**
+     * Seeks to exactly positionMs whatever the seek mode, e.g. to restore a saved position.
+     */
+    void seekExactly(SimpleExoPlayer player, int windowIndex, long positionMs) {
+        player.setSeekParameters(SeekParameters.EXACT);
+        PlaybackMetrics.getInstance().tagNextSeek(player, false);
+        player.seekTo(windowIndex, positionMs);
+    }
+
+    /**
+     * Returns the sync frame closest to positionMs that is in the seek direction and within
+     * {@link #MAX_SNAP_DISTANCE_MS}, or {@link C#TIME_UNSET} if there is none.
+     */
+    private static long snap(long[] syncTimesUs, long positionMs, long currentMs, int direction) {
+        int index = Arrays.binarySearch(syncTimesUs, C.msToUs(positionMs));
+        int after = index >= 0 ? index : -index - 1;
+        int before = index >= 0 ? index : after - 1;
+        long snappedMs = C.TIME_UNSET;
+        for (int candidate : new int[] {before, after}) {
+            if (candidate < 0 || candidate >= syncTimesUs.length) {
+                continue;
+            }
+            long candidateMs = C.usToMs(syncTimesUs[candidate]);
+            if (currentMs != C.TIME_UNSET
+                    && ((direction > 0 && candidateMs < currentMs + MIN_PROGRESS_MS)
+                    || (direction < 0 && candidateMs > currentMs - MIN_PROGRESS_MS))) {
+                continue;
+            }
+            long distanceMs = Math.abs(candidateMs - positionMs);
+            if (distanceMs <= MAX_SNAP_DISTANCE_MS && (snappedMs == C.TIME_UNSET
+                    || distanceMs < Math.abs(snappedMs - positionMs))) {
+                snappedMs = candidateMs;
+            }
+        }
+        return snappedMs;
+    }
+}
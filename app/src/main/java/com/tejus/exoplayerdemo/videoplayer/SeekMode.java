@@ -0,0 +1,19 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+/**
+ * How a {@link PlayerInstance} resolves fast forward, rewind and scrubbing. Restoring a
+ * position, e.g. through {@link PlayerInstance#seek(long, int)}, is always exact.
+ */
+public enum SeekMode {
+
+    /**
+     * Seeks land exactly on the requested position, decoding from the preceding sync frame.
+     */
+    EXACT,
+
+    /**
+     * Seeks land on a nearby sync frame in the direction of the seek, which starts decoding
+     * straight away. Falls back to an exact seek when no sync frame is close enough.
+     */
+    SYNC
+}
@@ -0,0 +1,202 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.RequiresApi;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.media.session.MediaButtonReceiver;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.TextUtils;
+
+import com.google.android.exoplayer2.Player;
+import com.tejus.exoplayerdemo.MainActivity;
+import com.tejus.exoplayerdemo.R;
+
+/**
+ * Publishes player state to the MediaSession and the media notification. Bursts of player
+ * callbacks are coalesced into one update per frame, and the notification is only re-posted
+ * when something visible in it changed. Must only be used from the main thread.
+ */
+class SessionPublisher {
+
+    private static final String NOTIFICATION_CHANNEL_ID = "Video";
+    // Also the id PlaybackService runs in the foreground with, so it can't be 0.
+    static final int NOTIFICATION_ID = 2;
+    private static final long COALESCE_DELAY_MS = 16;
+    private static final long POSITION_DRIFT_TOLERANCE_MS = 500;
+    private static final long SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY |
+            PlaybackStateCompat.ACTION_PAUSE |
+            PlaybackStateCompat.ACTION_PLAY_PAUSE |
+            PlaybackStateCompat.ACTION_FAST_FORWARD |
+            PlaybackStateCompat.ACTION_REWIND |
+            PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
+            PlaybackStateCompat.ACTION_STOP;
+
+    private static boolean sChannelCreated;
+
+    private final MediaSessionCompat mMediaSession;
+    private final NotificationManager mNotificationManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = this::flush;
+    private final PlaybackStateCompat.Builder mStateBuilder =
+            new PlaybackStateCompat.Builder().setActions(SESSION_ACTIONS);
+    private final NotificationCompat.Builder mPlayingBuilder;
+    private final NotificationCompat.Builder mPausedBuilder;
+
+    private int mPendingState = PlaybackStateCompat.STATE_NONE;
+    private long mPendingPosition;
+    private boolean mFlushPosted;
+
+    private PlaybackStateCompat mPublishedState;
+    private int mNotifiedState = PlaybackStateCompat.STATE_NONE;
+    private String mTitle = "Title goes here";
+    private String mText = "Text goes here";
+    private boolean mMetadataChanged;
+
+    SessionPublisher(Context context, MediaSessionCompat mediaSession,
+                     NotificationManager notificationManager) {
+        mMediaSession = mediaSession;
+        mNotificationManager = notificationManager;
+        mMediaSession.setPlaybackState(mStateBuilder.build());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && !sChannelCreated) {
+            createNotificationChannel();
+            sChannelCreated = true;
+        }
+
+        NotificationCompat.Action playAction = new NotificationCompat.Action(
+                R.drawable.exo_controls_play, "Play",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(context,
+                        PlaybackStateCompat.ACTION_PLAY_PAUSE));
+        NotificationCompat.Action pauseAction = new NotificationCompat.Action(
+                R.drawable.exo_controls_pause, "Pause",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(context,
+                        PlaybackStateCompat.ACTION_PLAY_PAUSE));
+        NotificationCompat.Action restartAction = new NotificationCompat.Action(
+                R.drawable.exo_controls_previous, "Restart",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(context,
+                        PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS));
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0);
+        PendingIntent deleteIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(context,
+                PlaybackStateCompat.ACTION_STOP);
+
+        mPlayingBuilder = buildTemplate(context, contentIntent, deleteIntent)
+                .addAction(restartAction)
+                .addAction(pauseAction);
+        mPausedBuilder = buildTemplate(context, contentIntent, deleteIntent)
+                .addAction(restartAction)
+                .addAction(playAction);
+    }
+
+    private NotificationCompat.Builder buildTemplate(Context context, PendingIntent contentIntent,
+                                                     PendingIntent deleteIntent) {
+        return new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                .setContentIntent(contentIntent)
+                .setSmallIcon(R.drawable.exo_icon_play)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setDeleteIntent(deleteIntent)
+                .setStyle(new android.support.v4.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(mMediaSession.getSessionToken())
+                        .setShowActionsInCompactView(0, 1));
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void createNotificationChannel() {
+        NotificationChannel mChannel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, "Video", NotificationManager.IMPORTANCE_LOW);
+        mChannel.setDescription("Video playback");
+        mChannel.setShowBadge(false);
+        mChannel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
+        mNotificationManager.createNotificationChannel(mChannel);
+    }
+
+    /**
+     * Queues a state update. Only the last update within a frame is published.
+     */
+    void publish(boolean playWhenReady, int playbackState, long position) {
+        if (playbackState == Player.STATE_READY) {
+            mPendingState = playWhenReady ? PlaybackStateCompat.STATE_PLAYING
+                    : PlaybackStateCompat.STATE_PAUSED;
+        }
+        mPendingPosition = position;
+        scheduleFlush();
+    }
+
+    void setMetadata(String title, String text) {
+        if (!TextUtils.equals(mTitle, title) || !TextUtils.equals(mText, text)) {
+            mTitle = title;
+            mText = text;
+            mMetadataChanged = true;
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushPosted) {
+            mFlushPosted = true;
+            mHandler.postDelayed(mFlushRunnable, COALESCE_DELAY_MS);
+        }
+    }
+
+    private void flush() {
+        mFlushPosted = false;
+        if (mPendingState == PlaybackStateCompat.STATE_NONE) {
+            return;
+        }
+
+        if (hasSessionStateChanged()) {
+            mStateBuilder.setState(mPendingState, mPendingPosition, 1f);
+            mPublishedState = mStateBuilder.build();
+            mMediaSession.setPlaybackState(mPublishedState);
+        }
+
+        if (mPendingState != mNotifiedState || mMetadataChanged) {
+            NotificationCompat.Builder builder = mPendingState == PlaybackStateCompat.STATE_PLAYING
+                    ? mPlayingBuilder : mPausedBuilder;
+            builder.setContentTitle(mTitle).setContentText(mText);
+            mNotificationManager.notify(NOTIFICATION_ID, builder.build());
+            mNotifiedState = mPendingState;
+            mMetadataChanged = false;
+        }
+    }
+
+    /**
+     * Builds the notification as last published, for the playback service to run with.
+     */
+    Notification buildNotification() {
+        NotificationCompat.Builder builder = mNotifiedState == PlaybackStateCompat.STATE_PAUSED
+                ? mPausedBuilder : mPlayingBuilder;
+        return builder.setContentTitle(mTitle).setContentText(mText).build();
+    }
+
+    private boolean hasSessionStateChanged() {
+        if (mPublishedState == null || mPublishedState.getState() != mPendingState) {
+            return true;
+        }
+        long expectedPosition = mPublishedState.getPosition();
+        if (mPublishedState.getState() == PlaybackStateCompat.STATE_PLAYING) {
+            expectedPosition += SystemClock.elapsedRealtime() - mPublishedState.getLastPositionUpdateTime();
+        }
+        return Math.abs(expectedPosition - mPendingPosition) > POSITION_DRIFT_TOLERANCE_MS;
+    }
+
+    /**
+     * Drops any queued update and removes the notification.
+     */
+    void cancel() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushPosted = false;
+        mPendingState = PlaybackStateCompat.STATE_NONE;
+        mNotifiedState = PlaybackStateCompat.STATE_NONE;
+        mNotificationManager.cancel(NOTIFICATION_ID);
+    }
+}
@@ -0,0 +1,61 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One bandwidth meter per network for the whole process, so every new player starts from the
+ * estimate the previous ones built up on the same network instead of from scratch. Going back
+ * to a network picks its meter up again. A meter for a network seen in
+ * an earlier process starts from the estimate persisted in {@link BandwidthHistory}.
+ */
+class SharedBandwidthMeter {
+
+    private static final String LOG_TAG = SharedBandwidthMeter.class.getSimpleName();
+
+    private static final int MAX_METERS = 4;
+
+    // Most recently used last, so the meters of networks not seen for a while are dropped.
+    private static final LinkedHashMap<String, DefaultBandwidthMeter> sMeters =
+            new LinkedHashMap<String, DefaultBandwidthMeter>(MAX_METERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, DefaultBandwidthMeter> eldest) {
+                    return size() > MAX_METERS;
+                }
+            };
+    private static BandwidthHistory sHistory;
+
+    private SharedBandwidthMeter() {
+    }
+
+    /**
+     * Returns the meter of the current network, creating it on the first visit.
+     */
+    static synchronized DefaultBandwidthMeter getInstance(Context context) {
+        String networkKey = BandwidthHistory.getNetworkKey(context);
+        DefaultBandwidthMeter meter = sMeters.get(networkKey);
+        if (meter == null) {
+            if (sHistory == null) {
+                sHistory = new BandwidthHistory(context.getApplicationContext());
+            }
+            long initialEstimate = sHistory.getEstimate(networkKey);
+            Log.d(LOG_TAG, "New meter for " + networkKey + ", initial estimate " + initialEstimate);
+            meter = new DefaultBandwidthMeter.Builder()
+                    .setInitialBitrateEstimate(initialEstimate)
+                    .build();
+            BandwidthHistory history = sHistory;
+            meter.addEventListener(new Handler(Looper.getMainLooper()),
+                    (elapsedMs, bytes, bitrate) -> history.record(networkKey, bitrate));
+            sMeters.put(networkKey, meter);
+        }
+        return meter;
+    }
+}
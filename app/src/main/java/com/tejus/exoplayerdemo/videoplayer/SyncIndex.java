@@ -0,0 +1,188 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.DummyTrackOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import com.tejus.exoplayerdemo.AppExecutors;
+import com.tejus.exoplayerdemo.TaskScheduler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Per url sync frame times of MP4 videos. The index is built once per url by running the
+ * MP4 extractor over the media cache until it has parsed the moov box, so it usually costs a
+ * local read of data the player already fetched. Urls that are not MP4 are remembered too,
+ * so they are not probed again. Must only be used from the main thread.
+ */
+class SyncIndex {
+
+    private static final String LOG_TAG = SyncIndex.class.getSimpleName();
+    private static final int MAX_ENTRIES = 32;
+    private static final int MAX_SYNC_SAMPLES = 20000;
+    private static final long[] UNSUPPORTED = new long[0];
+
+    private static SyncIndex sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, long[]> mEntries = new LruCache<>(MAX_ENTRIES);
+    private final Set<String> mLoading = new HashSet<>();
+
+    private SyncIndex(Context context) {
+        mContext = context;
+    }
+
+    @MainThread
+    static SyncIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts building the index of url in the background unless it is known or loading.
+     */
+    @MainThread
+    void request(String url) {
+        if (mEntries.get(url) != null || !mLoading.add(url)) {
+            return;
+        }
+        try {
+            AppExecutors.getInstance().networkIO().submit(null, "syncindex:" + url,
+                    TaskScheduler.Priority.LOW, () -> {
+                        long[] syncTimesUs = load(url);
+                        AppExecutors.getInstance().mainThread().execute(() -> {
+                            mLoading.remove(url);
+                            if (syncTimesUs != null) {
+                                mEntries.put(url, syncTimesUs);
+                            }
+                        });
+                    });
+        } catch (RejectedExecutionException e) {
+            mLoading.remove(url);
+            Log.e(LOG_TAG, "Exception caught in request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the sorted sync frame times of url in microseconds, an empty array if url is not
+     * an MP4, or null if the index is not built yet.
+     */
+    @MainThread
+    @Nullable
+    long[] get(String url) {
+        return mEntries.get(url);
+    }
+
+    @Nullable
+    private long[] load(String url) {
+        DataSource dataSource = MediaCache.getInstance(mContext).getDataSourceFactory()
+                .createDataSource();
+        Mp4Extractor extractor = new Mp4Extractor();
+        SeekMapOutput output = new SeekMapOutput();
+        PositionHolder positionHolder = new PositionHolder();
+        Uri uri = Uri.parse(url);
+        long position = 0;
+        boolean initialised = false;
+        try {
+            while (output.mSeekMap == null) {
+                long length = dataSource.open(new DataSpec(uri, position, C.LENGTH_UNSET, null));
+                if (length != C.LENGTH_UNSET) {
+                    length += position;
+                }
+                ExtractorInput input = new DefaultExtractorInput(dataSource, position, length);
+                try {
+                    if (!initialised) {
+                        if (!extractor.sniff(input)) {
+                            Log.d(LOG_TAG, "Not an MP4, no sync index for " + url);
+                            return UNSUPPORTED;
+                        }
+                        input.resetPeekPosition();
+                        extractor.init(output);
+                        initialised = true;
+                    }
+                    int result = Extractor.RESULT_CONTINUE;
+                    while (result == Extractor.RESULT_CONTINUE && output.mSeekMap == null) {
+                        result = extractor.read(input, positionHolder);
+                    }
+                    if (result == Extractor.RESULT_END_OF_INPUT) {
+                        return UNSUPPORTED;
+                    }
+                    // The moov box may come after the media data, which the extractor skips.
+                    position = result == Extractor.RESULT_SEEK
+                            ? positionHolder.position : input.getPosition();
+                } finally {
+                    Util.closeQuietly(dataSource);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            Log.e(LOG_TAG, "Exception caught in load: " + e.getMessage());
+            return null;
+        } finally {
+            extractor.release();
+        }
+        return toSyncTimes(output.mSeekMap);
+    }
+
+    private static long[] toSyncTimes(SeekMap seekMap) {
+        if (!seekMap.isSeekable()) {
+            return UNSUPPORTED;
+        }
+        long[] syncTimesUs = new long[64];
+        syncTimesUs[0] = seekMap.getSeekPoints(0).first.timeUs;
+        int count = 1;
+        while (count < MAX_SYNC_SAMPLES) {
+            // Just past a sync frame, the second point is the sync frame after it, if any.
+            long lastTimeUs = syncTimesUs[count - 1];
+            long nextTimeUs = seekMap.getSeekPoints(lastTimeUs + 1).second.timeUs;
+            if (nextTimeUs <= lastTimeUs) {
+                break;
+            }
+            if (count == syncTimesUs.length) {
+                syncTimesUs = Arrays.copyOf(syncTimesUs, count * 2);
+            }
+            syncTimesUs[count++] = nextTimeUs;
+        }
+        return Arrays.copyOf(syncTimesUs, count);
+    }
+
+    private static class SeekMapOutput implements ExtractorOutput {
+
+        private volatile SeekMap mSeekMap;
+
+        @Override
+        public TrackOutput track(int id, int type) {
+            return new DummyTrackOutput();
+        }
+
+        @Override
+        public void endTracks() {
+        }
+
+        @Override
+        public void seekMap(SeekMap seekMap) {
+            mSeekMap = seekMap;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.tejus.exoplayerdemo.AppExecutors;
+import com.tejus.exoplayerdemo.TaskGroup;
+import com.tejus.exoplayerdemo.TaskScheduler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Seek bar previews. Frames are taken at a fixed interval by a few retrievers in parallel,
+ * each working through its own stretch of the video, and packed into small JPEG sprite
+ * sheets. Sheets are kept on disk per url, with an index mapping time to sheet and cell,
+ * and decoded sheets are kept in a memory LRU. Sheets that were already written survive a
+ * cancelled run, so the next run only extracts what is missing.
+ */
+class TrickPlayCache {
+
+    private static final String LOG_TAG = TrickPlayCache.class.getSimpleName();
+    private static final String CACHE_DIR = "trickplay";
+    private static final String INDEX_FILE = "index";
+    private static final int INDEX_VERSION = 1;
+    private static final int FRAME_WIDTH = 160;
+    private static final int COLUMNS = 5;
+    private static final int ROWS = 5;
+    private static final int FRAMES_PER_SHEET = COLUMNS * ROWS;
+    private static final long MIN_INTERVAL_MS = 5000;
+    private static final int MAX_FRAMES = 200;
+    private static final int WORKERS = 2;
+    private static final int JPEG_QUALITY = 70;
+    private static final long MAX_DISK_BYTES = 20 * 1024 * 1024;
+    private static final int MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+    private static final long RETRY_DELAY_MS = 30000;
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000;
+
+    private static TrickPlayCache sInstance;
+
+    private final File mCacheDir;
+    private final HttpStack mHttpStack;
+    private final LruCache<String, Bitmap> mSheets;
+    private final Map<String, Index> mIndexes = new HashMap<>();
+    private final Map<String, Job> mJobs = new HashMap<>();
+    private final Map<String, Failure> mFailures = new HashMap<>();
+    private final Set<String> mLoadingSheets = new HashSet<>();
+
+    static class Frame {
+        final Bitmap sheet;
+        final Rect source;
+
+        Frame(Bitmap sheet, Rect source) {
+            this.sheet = sheet;
+            this.source = source;
+        }
+    }
+
+    private static class Index {
+        final long intervalMs;
+        final int frameCount;
+        final int frameWidth;
+        final int frameHeight;
+
+        Index(long intervalMs, int frameCount, int frameWidth, int frameHeight) {
+            this.intervalMs = intervalMs;
+            this.frameCount = frameCount;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+
+        int sheetCount() {
+            return (frameCount + FRAMES_PER_SHEET - 1) / FRAMES_PER_SHEET;
+        }
+    }
+
+    private static class Failure {
+        int count;
+        long retryAtMs;
+    }
+
+    private TrickPlayCache(Context context) {
+        mCacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        mHttpStack = HttpStack.getInstance(context);
+        mSheets = new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    @MainThread
+    static TrickPlayCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrickPlayCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts generating sheets for url in the background, unless that is already under way.
+     * After a failed run, the url is only tried again once a backoff delay has passed, which
+     * doubles with every consecutive failure.
+     */
+    @MainThread
+    void prepare(String url, long durationMs) {
+        if (durationMs <= 0 || mJobs.containsKey(url)) {
+            return;
+        }
+        Failure failure = mFailures.get(url);
+        if (failure != null && SystemClock.elapsedRealtime() < failure.retryAtMs) {
+            return;
+        }
+        Job job = new Job(url, durationMs);
+        mJobs.put(url, job);
+        job.start();
+    }
+
+    @MainThread
+    void cancel(String url) {
+        Job job = mJobs.remove(url);
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Returns the frame closest before position if its sheet is in memory. Otherwise starts
+     * loading the sheet from disk and returns null.
+     */
+    @MainThread
+    @Nullable
+    Frame getFrame(String url, long positionMs) {
+        Index index = mIndexes.get(url);
+        if (index == null) {
+            return null;
+        }
+        int frame = (int) Math.min(Math.max(0, positionMs) / index.intervalMs, index.frameCount - 1);
+        int sheet = frame / FRAMES_PER_SHEET;
+        String sheetKey = url + "#" + sheet;
+        Bitmap bitmap = mSheets.get(sheetKey);
+        if (bitmap == null) {
+            loadSheet(url, sheet, sheetKey);
+            return null;
+        }
+        int cell = frame % FRAMES_PER_SHEET;
+        int left = (cell % COLUMNS) * index.frameWidth;
+        int top = (cell / COLUMNS) * index.frameHeight;
+        return new Frame(bitmap, new Rect(left, top, left + index.frameWidth, top + index.frameHeight));
+    }
+
+    @MainThread
+    private void onJobFinished(String url, boolean failed) {
+        if (!failed) {
+            mFailures.remove(url);
+            return;
+        }
+        Failure failure = mFailures.get(url);
+        if (failure == null) {
+            failure = new Failure();
+            mFailures.put(url, failure);
+        }
+        long delayMs = Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << Math.min(failure.count, 16));
+        failure.count++;
+        failure.retryAtMs = SystemClock.elapsedRealtime() + delayMs;
+        Log.w(LOG_TAG, "Generation failed for " + url + ", retrying in " + delayMs + "ms");
+    }
+
+    private void loadSheet(String url, int sheet, String sheetKey) {
+        if (!mLoadingSheets.add(sheetKey)) {
+            return;
+        }
+        File file = getSheetFile(url, sheet);
+        AppExecutors.getInstance().diskIO().execute(() -> {
+            Bitmap bitmap = file.exists() ? decodeSheet(file) : null;
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                mLoadingSheets.remove(sheetKey);
+                if (bitmap != null) {
+                    mSheets.put(sheetKey, bitmap);
+                }
+            });
+        });
+    }
+
+    private static Bitmap decodeSheet(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    private File getUrlDir(String url) {
+        return new File(mCacheDir, hash(url));
+    }
+
+    private File getSheetFile(String url, int sheet) {
+        return new File(getUrlDir(url), "sheet-" + sheet + ".jpg");
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    @Nullable
+    private static Index readIndex(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if (input.readInt() != INDEX_VERSION) {
+                return null;
+            }
+            return new Index(input.readLong(), input.readInt(), input.readInt(), input.readInt());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Exception caught in readIndex: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeIndex(File file, Index index) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+            output.writeInt(INDEX_VERSION);
+            output.writeLong(index.intervalMs);
+            output.writeInt(index.frameCount);
+            output.writeInt(index.frameWidth);
+            output.writeInt(index.frameHeight);
+        }
+    }
+
+    /**
+     * Deletes whole videos, least recently generated first, until the cache fits its cap.
+     */
+    private void trimDisk() {
+        File[] dirs = mCacheDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        long totalBytes = 0;
+        long[] sizes = new long[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            File[] files = dirs[i].listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    sizes[i] += file.length();
+                }
+            }
+            totalBytes += sizes[i];
+        }
+        if (totalBytes <= MAX_DISK_BYTES) {
+            return;
+        }
+        Map<File, Long> sizeOf = new HashMap<>();
+        for (int i = 0; i < dirs.length; i++) {
+            sizeOf.put(dirs[i], sizes[i]);
+        }
+        Arrays.sort(dirs, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File dir : dirs) {
+            if (totalBytes <= MAX_DISK_BYTES) {
+                break;
+            }
+            totalBytes -= sizeOf.get(dir);
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private class Job {
+
+        private final String mUrl;
+        private final long mDurationMs;
+        private final TaskGroup mTaskGroup;
+        private final AtomicInteger mPendingTasks = new AtomicInteger();
+        private volatile boolean mCancelled;
+        private volatile boolean mFailed;
+
+        Job(String url, long durationMs) {
+            mUrl = url;
+            mDurationMs = durationMs;
+            mTaskGroup = new TaskGroup("trickplay:" + url);
+        }
+
+        void start() {
+            submit("index", this::prepareIndex);
+        }
+
+        void cancel() {
+            mCancelled = true;
+            mTaskGroup.cancel();
+        }
+
+        /**
+         * Runs runnable on the network threads. Once the last task of the job is done the job
+         * is dropped, so that a later prepare() picks up what is missing, and a failure is
+         * recorded for the backoff.
+         */
+        private void submit(String name, Runnable runnable) {
+            mPendingTasks.incrementAndGet();
+            try {
+                AppExecutors.getInstance().networkIO().submit(mTaskGroup,
+                        "trickplay:" + name + ":" + mUrl, TaskScheduler.Priority.LOW, () -> {
+                            try {
+                                runnable.run();
+                            } finally {
+                                onTaskDone();
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                Log.e(LOG_TAG, "Exception caught in submit: " + e.getMessage());
+                mFailed = true;
+                onTaskDone();
+            }
+        }
+
+        private void onTaskDone() {
+            if (mPendingTasks.decrementAndGet() == 0) {
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    if (mJobs.get(mUrl) == this) {
+                        mJobs.remove(mUrl);
+                        onJobFinished(mUrl, mFailed && !mCancelled);
+                    }
+                });
+            }
+        }
+
+        private void prepareIndex() {
+            File dir = getUrlDir(mUrl);
+            File indexFile = new File(dir, INDEX_FILE);
+            Index index = readIndex(indexFile);
+            if (index == null) {
+                index = createIndex();
+                if (index == null) {
+                    mFailed = true;
+                    return;
+                }
+                try {
+                    if (!dir.isDirectory() && !dir.mkdirs()) {
+                        throw new IOException("Unable to create " + dir);
+                    }
+                    writeIndex(indexFile, index);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Exception caught in prepareIndex: " + e.getMessage());
+                    mFailed = true;
+                    return;
+                }
+            }
+            dir.setLastModified(System.currentTimeMillis());
+
+            Index readyIndex = index;
+            AppExecutors.getInstance().mainThread().execute(() -> mIndexes.put(mUrl, readyIndex));
+
+            List<Integer> missing = new ArrayList<>();
+            for (int sheet = 0; sheet < index.sheetCount(); sheet++) {
+                if (!getSheetFile(mUrl, sheet).exists()) {
+                    missing.add(sheet);
+                }
+            }
+            Log.d(LOG_TAG, missing.size() + " of " + index.sheetCount() + " sheets to extract");
+            // Each worker takes a contiguous run of sheets, so its retriever mostly reads forward.
+            int workers = Math.min(WORKERS, missing.size());
+            for (int worker = 0; worker < workers; worker++) {
+                List<Integer> sheets = missing.subList(worker * missing.size() / workers,
+                        (worker + 1) * missing.size() / workers);
+                List<Integer> assigned = new ArrayList<>(sheets);
+                submit("worker" + worker, () -> extractSheets(readyIndex, assigned));
+            }
+        }
+
+        @Nullable
+        private Index createIndex() {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                retriever.setDataSource(new HttpMediaDataSource(mHttpStack, mUrl));
+                int width = parseInt(retriever.extractMetadata(
+                        MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+                int height = parseInt(retriever.extractMetadata(
+                        MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+                int rotation = parseInt(retriever.extractMetadata(
+                        MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+                if (width <= 0 || height <= 0) {
+                    Log.w(LOG_TAG, "No video size for " + mUrl);
+                    return null;
+                }
+                if (rotation == 90 || rotation == 270) {
+                    int swap = width;
+                    width = height;
+                    height = swap;
+                }
+                long intervalMs = Math.max(MIN_INTERVAL_MS, mDurationMs / MAX_FRAMES);
+                int frameCount = (int) (mDurationMs / intervalMs) + 1;
+                int frameHeight = Math.max(1, Math.round((float) FRAME_WIDTH * height / width));
+                return new Index(intervalMs, frameCount, FRAME_WIDTH, frameHeight);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Exception caught in createIndex: " + e.getMessage());
+                return null;
+            } finally {
+                retriever.release();
+            }
+        }
+
+        private void extractSheets(Index index, List<Integer> sheets) {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            try {
+                retriever.setDataSource(new HttpMediaDataSource(mHttpStack, mUrl));
+                for (int sheet : sheets) {
+                    if (mCancelled || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    Bitmap bitmap = extractSheet(retriever, index, sheet, paint);
+                    if (bitmap != null) {
+                        writeSheet(sheet, bitmap);
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Exception caught in extractSheets: " + e.getMessage());
+                mFailed = true;
+            } finally {
+                retriever.release();
+            }
+        }
+
+        @Nullable
+        private Bitmap extractSheet(MediaMetadataRetriever retriever, Index index, int sheet,
+                                    Paint paint) {
+            int firstFrame = sheet * FRAMES_PER_SHEET;
+            int frames = Math.min(FRAMES_PER_SHEET, index.frameCount - firstFrame);
+            int rows = (frames + COLUMNS - 1) / COLUMNS;
+            Bitmap bitmap = Bitmap.createBitmap(COLUMNS * index.frameWidth,
+                    rows * index.frameHeight, Bitmap.Config.RGB_565);
+            Canvas canvas = new Canvas(bitmap);
+            Rect destination = new Rect();
+            for (int cell = 0; cell < frames; cell++) {
+                if (mCancelled) {
+                    bitmap.recycle();
+                    return null;
+                }
+                long timeUs = (firstFrame + cell) * index.intervalMs * 1000;
+                Bitmap frame = getFrame(retriever, timeUs, index);
+                if (frame == null) {
+                    continue;
+                }
+                int left = (cell % COLUMNS) * index.frameWidth;
+                int top = (cell / COLUMNS) * index.frameHeight;
+                destination.set(left, top, left + index.frameWidth, top + index.frameHeight);
+                canvas.drawBitmap(frame, null, destination, paint);
+                frame.recycle();
+            }
+            return bitmap;
+        }
+
+        @Nullable
+        private Bitmap getFrame(MediaMetadataRetriever retriever, long timeUs, Index index) {
+            // Sync frames decode without a chain of dependent frames in front of them.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(timeUs,
+                        MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                        index.frameWidth, index.frameHeight);
+            }
+            return retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        }
+
+        private void writeSheet(int sheet, Bitmap bitmap) {
+            File file = getSheetFile(mUrl, sheet);
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Exception caught in writeSheet: " + e.getMessage());
+                tempFile.delete();
+                return;
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+            String sheetKey = mUrl + "#" + sheet;
+            AppExecutors.getInstance().mainThread().execute(() -> mSheets.put(sheetKey, bitmap));
+            AppExecutors.getInstance().diskIO().execute(TrickPlayCache.this::trimDisk);
+        }
+    }
+
+    private static int parseInt(@Nullable String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.tejus.exoplayerdemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording into and reading from the histograms behind the playback, HTTP and scheduler
+ * metrics, alone and with several threads recording at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Group)
+public class HistogramBenchmark {
+
+    private Histogram mHistogram;
+
+    @Setup
+    public void setUp() {
+        mHistogram = new Histogram();
+        for (int i = 0; i < 10000; i++) {
+            mHistogram.record(ThreadLocalRandom.current().nextLong(1, 10000));
+        }
+    }
+
+    @Benchmark
+    @Group("single")
+    public void record() {
+        mHistogram.record(ThreadLocalRandom.current().nextLong(1, 10000));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void recordContended() {
+        mHistogram.record(ThreadLocalRandom.current().nextLong(1, 10000));
+    }
+
+    @Benchmark
+    @Group("contended")
+    public long snapshotWhileRecording() {
+        return mHistogram.snapshot().percentile(99);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    public long snapshotPercentiles() {
+        Histogram.Snapshot snapshot = mHistogram.snapshot();
+        return snapshot.percentile(50) + snapshot.percentile(95) + snapshot.percentile(99);
+    }
+}
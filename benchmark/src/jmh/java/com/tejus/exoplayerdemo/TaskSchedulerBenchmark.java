@@ -0,0 +1,96 @@
+package com.tejus.exoplayerdemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting work through the scheduler behind AppExecutors: submitting a batch
+ * and waiting for it to drain, deduplicating keyed tasks, and cancelling a group.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TaskSchedulerBenchmark {
+
+    private static final int BATCH_SIZE = 32;
+    // Room for cancelled tasks of earlier invocations that haven't been dequeued yet.
+    private static final int QUEUE_CAPACITY = 64 * BATCH_SIZE;
+
+    @Param({"1", "3"})
+    public int threads;
+
+    private TaskScheduler mScheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mScheduler = new TaskScheduler("benchmark", threads, QUEUE_CAPACITY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Benchmark
+    public void submitBatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mScheduler.submit(null, null, TaskScheduler.Priority.NORMAL, done::countDown);
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void submitMixedPriorities() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH_SIZE);
+        TaskScheduler.Priority[] priorities = TaskScheduler.Priority.values();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mScheduler.submit(null, null, priorities[i % priorities.length], done::countDown);
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public TaskScheduler.Task submitDuplicateKeys() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        TaskScheduler.Task first = mScheduler.submit(null, "thumbnail", TaskScheduler.Priority.HIGH,
+                () -> awaitQuietly(release));
+        TaskScheduler.Task last = first;
+        for (int i = 1; i < BATCH_SIZE; i++) {
+            last = mScheduler.submit(null, "thumbnail", TaskScheduler.Priority.HIGH,
+                    () -> awaitQuietly(release));
+        }
+        release.countDown();
+        return last;
+    }
+
+    @Benchmark
+    public void cancelGroup() {
+        CountDownLatch release = new CountDownLatch(1);
+        TaskGroup group = new TaskGroup("benchmark");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mScheduler.submit(group, null, TaskScheduler.Priority.LOW, () -> awaitQuietly(release));
+        }
+        group.cancel();
+        release.countDown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.tejus.exoplayerdemo.videoplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialising a batch of resume positions and replaying a log at startup, for a compacted
+ * log and for one where every url has been updated many times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PositionLogBenchmark {
+
+    private static final String URL_PREFIX = "https://cdn.example.com/videos/episode-";
+
+    @Param({"10", "500"})
+    public int urls;
+
+    @Param({"1", "8"})
+    public int updatesPerUrl;
+
+    private List<PositionLog.Position> mBatch;
+    private byte[] mLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBatch = new ArrayList<>();
+        for (int i = 0; i < urls; i++) {
+            mBatch.add(new PositionLog.Position(URL_PREFIX + i + ".mp4", i * 1000L, true));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        PositionLog.writeHeader(output);
+        for (int update = 0; update < updatesPerUrl; update++) {
+            PositionLog.writeRecords(output, mBatch);
+        }
+        output.flush();
+        mLog = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeBatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(mLog.length);
+        DataOutputStream output = new DataOutputStream(bytes);
+        PositionLog.writeRecords(output, mBatch);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Map<String, PositionLog.Position> replay() throws IOException {
+        Map<String, PositionLog.Position> positions = new LinkedHashMap<>();
+        PositionLog.read(new DataInputStream(new ByteArrayInputStream(mLog)), positions);
+        return positions;
+    }
+}